@@ -4,6 +4,7 @@
 // This game is a variant of the game Wordle.   
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 public class Absurdle  {
@@ -11,6 +12,22 @@ public class Absurdle  {
     public static final String YELLOW = "🟨";
     public static final String GRAY = "⬜";
 
+    // Patterns can also be packed into an int as base-3 digits, one digit per square with the
+    // first square as the most significant digit. The digits are ordered the same way the
+    // squares compare as Strings, so a smaller code is always the alphabetically first pattern.
+    public static final int GRAY_CODE = 0;
+    public static final int YELLOW_CODE = 1;
+    public static final int GREEN_CODE = 2;
+
+    // The longest word length whose packed pattern still fits in an int (3^19 < 2^31)
+    public static final int MAX_PACKED_LENGTH = 19;
+
+    // The largest number of possible patterns that will be counted with a flat table (3^12)
+    public static final int MAX_TABLE_SIZE = 531441;
+
+    // The fewest words a single worker is given when record runs in parallel
+    public static final int MIN_PARALLEL_CHUNK = 4096;
+
     // [[ ALL OF MAIN PROVIDED ]]
     public static void main(String[] args) throws FileNotFoundException {
         Scanner console = new Scanner(System.in);
@@ -113,6 +130,260 @@ public class Absurdle  {
         if (words.isEmpty() || guess.length() != wordLength) {
             throw new IllegalArgumentException();
         }
+        if (wordLength > MAX_PACKED_LENGTH) {
+            return recordByStrings(guess, words);
+        }
+        int[] codes = new int[words.size()];
+        int[] letterCounts = new int[26];
+
+        // Finds the packed pattern of every word, in the order the set iterates
+        int index = 0;
+        for (String word : words) {
+            codes[index] = patternCode(word, guess, letterCounts);
+            index++;
+        }
+        int finalCode = findLargestPatternCode(codes, codes.length, wordLength);
+
+        // Removes every word that does not belong to the largest set of words
+        Iterator<String> iter = words.iterator();
+        index = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            if (codes[index] != finalCode) {
+                iter.remove();
+            }
+            index++;
+        }
+        return renderPattern(finalCode, wordLength);
+    }
+
+    // Behavior:
+    // - This method does the same thing as record, but splits the words across the given pool.
+    //   Each worker finds the patterns of its share of the words, the patterns are counted once
+    //   all of them are found, and only then is the set of words narrowed down.
+    //   The same pattern as record is chosen, including the alphabetical tie-breaking.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - words: the words from the dictionary, with no duplicates, that are the length chosen by the user
+    //   which will then be updated to store the largest set of words associated with the pattern returned
+    // - wordLength: the length of the word the user would like to guess
+    // - pool: the pool that the workers run in
+    // Returns:
+    // - string: the pattern of the guess (which has the largest number of words associated with it)
+    // Exceptions:
+    // - if the set of words inputted by the user is empty or if the length of the guess is incorrect,
+    //   an IllegalArgumentException will be thrown
+    public static String record(String guess, Set<String> words, int wordLength, ForkJoinPool pool) {
+        if (words.isEmpty() || guess.length() != wordLength) {
+            throw new IllegalArgumentException();
+        }
+        if (wordLength > MAX_PACKED_LENGTH || words.size() < 2 * MIN_PARALLEL_CHUNK) {
+            return record(guess, words, wordLength);
+        }
+        String[] candidates = words.toArray(new String[0]);
+        int[] codes = new int[candidates.length];
+        int chunkSize = Math.max(MIN_PARALLEL_CHUNK, candidates.length / (4 * pool.getParallelism()));
+        pool.invoke(new PatternCodeTask(candidates, guess, codes, 0, candidates.length, chunkSize));
+        int finalCode = findLargestPatternCode(codes, codes.length, wordLength);
+
+        // Removes every word that does not belong to the largest set of words
+        Iterator<String> iter = words.iterator();
+        int index = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            if (codes[index] != finalCode) {
+                iter.remove();
+            }
+            index++;
+        }
+        return renderPattern(finalCode, wordLength);
+    }
+
+    // Behavior:
+    // - This method does the same thing as record, but looks up each word's pattern in the given
+    //   precomputed matrix instead of comparing letters. If the guess is not one of the matrix's
+    //   words, the patterns are computed as usual.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - words: the words from the dictionary, with no duplicates, that are the length chosen by the user
+    //   which will then be updated to store the largest set of words associated with the pattern returned
+    // - wordLength: the length of the word the user would like to guess
+    // - matrix: the patterns for the dictionary the words were chosen from
+    // Returns:
+    // - string: the pattern of the guess (which has the largest number of words associated with it)
+    // Exceptions:
+    // - if the set of words inputted by the user is empty, if the length of the guess is incorrect,
+    //   or if the matrix was built for a different word length, an IllegalArgumentException will be thrown
+    public static String record(String guess, Set<String> words, int wordLength, PatternMatrix matrix) {
+        if (words.isEmpty() || guess.length() != wordLength || matrix.wordLength() != wordLength) {
+            throw new IllegalArgumentException();
+        }
+        WordIndex dictionary = matrix.index();
+        int guessIndex = dictionary.indexOf(guess);
+        if (guessIndex < 0) {
+            return record(guess, words, wordLength);
+        }
+        int[] codes = new int[words.size()];
+        int[] letterCounts = new int[26];
+
+        // Sorted sets are found by searching forward from the previous word's position
+        int index = 0;
+        int searchStart = 0;
+        for (String word : words) {
+            int answerIndex = dictionary.indexOf(word, searchStart);
+            if (answerIndex < 0) {
+                answerIndex = dictionary.indexOf(word);
+            }
+            if (answerIndex >= 0) {
+                codes[index] = matrix.pattern(guessIndex, answerIndex);
+                searchStart = answerIndex + 1;
+            } else {
+                codes[index] = patternCode(word, guess, letterCounts);
+            }
+            index++;
+        }
+        int finalCode = findLargestPatternCode(codes, codes.length, wordLength);
+
+        // Removes every word that does not belong to the largest set of words
+        Iterator<String> iter = words.iterator();
+        index = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            if (codes[index] != finalCode) {
+                iter.remove();
+            }
+            index++;
+        }
+        return renderPattern(finalCode, wordLength);
+    }
+
+    // Behavior:
+    // - This method does the same thing as record, but for a set of words stored as a bitset over
+    //   the given index. The set of words is narrowed by replacing its bits with the bits of the
+    //   largest set of words, so no words are copied.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - index: the dictionary words of the length chosen by the user
+    // - words: the words that could still be the secret word, which will then be updated to store
+    //   the largest set of words associated with the pattern returned
+    // Returns:
+    // - string: the pattern of the guess (which has the largest number of words associated with it)
+    // Exceptions:
+    // - if the set of words inputted by the user is empty or if the length of the guess is incorrect,
+    //   an IllegalArgumentException will be thrown
+    public static String record(String guess, WordIndex index, CandidateSet words) {
+        return record(guess, index, words, null);
+    }
+
+    // Behavior:
+    // - This method does the same thing as record for a bitset of words, but looks up each word's
+    //   pattern in the given precomputed matrix when the guess is one of the matrix's words.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - words: the words that could still be the secret word, which will then be updated to store
+    //   the largest set of words associated with the pattern returned
+    // - matrix: the patterns for the dictionary words of the length chosen by the user
+    // Returns:
+    // - string: the pattern of the guess (which has the largest number of words associated with it)
+    // Exceptions:
+    // - if the set of words inputted by the user is empty or if the length of the guess is incorrect,
+    //   an IllegalArgumentException will be thrown
+    public static String record(String guess, CandidateSet words, PatternMatrix matrix) {
+        return record(guess, matrix.index(), words, matrix);
+    }
+
+    // This is a helper method for the bitset versions of record, where the matrix may be null.
+    private static String record(String guess, WordIndex index, CandidateSet words,
+                                 PatternMatrix matrix) {
+        int wordLength = index.wordLength();
+        if (words.isEmpty() || guess.length() != wordLength || wordLength > MAX_PACKED_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        int[] codes = findPatternCodes(guess, index, words, matrix);
+        int finalCode = findLargestPatternCode(codes, codes.length, wordLength);
+
+        // Replaces the bits of the set of words with the bits of the largest set of words
+        long[] bits = new long[words.bits().length];
+        int size = 0;
+        int position = 0;
+        for (int i = words.nextIndex(0); i >= 0; i = words.nextIndex(i + 1)) {
+            if (codes[position] == finalCode) {
+                bits[i >>> 6] |= 1L << i;
+                size++;
+            }
+            position++;
+        }
+        words.replace(bits, size);
+        return renderPattern(finalCode, wordLength);
+    }
+
+    // Behavior:
+    // - This method splits a bitset of words into one bitset per pattern for the given guess,
+    //   without changing the set of words.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - index: the dictionary words of the length chosen by the user
+    // - words: the words that could still be the secret word
+    // Returns:
+    // - map: each packed pattern that some word gets, in increasing order, associated with the
+    //   set of words that get that pattern
+    // Exceptions:
+    // - if the length of the guess is incorrect, an IllegalArgumentException will be thrown
+    public static Map<Integer, CandidateSet> partition(String guess, WordIndex index,
+                                                       CandidateSet words) {
+        int wordLength = index.wordLength();
+        if (guess.length() != wordLength || wordLength > MAX_PACKED_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        int[] codes = findPatternCodes(guess, index, words, null);
+        Map<Integer, long[]> patternToBits = new TreeMap<>();
+        Map<Integer, Integer> patternToSize = new HashMap<>();
+        int position = 0;
+        for (int i = words.nextIndex(0); i >= 0; i = words.nextIndex(i + 1)) {
+            long[] bits = patternToBits.get(codes[position]);
+            if (bits == null) {
+                bits = new long[words.bits().length];
+                patternToBits.put(codes[position], bits);
+                patternToSize.put(codes[position], 0);
+            }
+            bits[i >>> 6] |= 1L << i;
+            patternToSize.put(codes[position], patternToSize.get(codes[position]) + 1);
+            position++;
+        }
+
+        Map<Integer, CandidateSet> patternToWords = new TreeMap<>();
+        for (int code : patternToBits.keySet()) {
+            patternToWords.put(code, new CandidateSet(patternToBits.get(code), patternToSize.get(code)));
+        }
+        return patternToWords;
+    }
+
+    // Returns the packed pattern of every word in the bitset of words for the given guess, in
+    // increasing order of the words' indexes. The matrix is used if it is not null and the
+    // guess is one of its words.
+    private static int[] findPatternCodes(String guess, WordIndex index, CandidateSet words,
+                                          PatternMatrix matrix) {
+        int[] codes = new int[words.size()];
+        int guessIndex = -1;
+        if (matrix != null) {
+            guessIndex = index.indexOf(guess);
+        }
+        int[] letterCounts = new int[26];
+        int position = 0;
+        for (int i = words.nextIndex(0); i >= 0; i = words.nextIndex(i + 1)) {
+            if (guessIndex >= 0) {
+                codes[position] = matrix.pattern(guessIndex, i);
+            } else {
+                codes[position] = index.patternCode(i, guess, letterCounts);
+            }
+            position++;
+        }
+        return codes;
+    }
+
+    // This is a helper method for record that groups the words by their emoji pattern Strings.
+    // It is used for words that are too long for their pattern to be packed into an int.
+    private static String recordByStrings(String guess, Set<String> words) {
         Map<String, Set<String>> patternToWords = new TreeMap<>();
 
         // Matches each pattern associated with a set of words in the map
@@ -137,6 +408,59 @@ public class Absurdle  {
         return finalPattern;
     }
 
+    // Behavior:
+    // - This method finds the packed pattern shared by the largest number of words
+    // Parameters:
+    // - codes: the packed pattern of each word
+    // - size: the number of codes in use at the front of the array
+    // - wordLength: the length of the words the patterns were made from
+    // Returns:
+    // - int: the packed pattern with the most words. If there are multiple patterns with the
+    //   same largest number of words, the smallest code (the alphabetically first pattern) is chosen.
+    public static int findLargestPatternCode(int[] codes, int size, int wordLength) {
+        int patternCount = powerOfThree(wordLength);
+        if (patternCount <= MAX_TABLE_SIZE) {
+            int[] counts = new int[patternCount];
+            for (int i = 0; i < size; i++) {
+                counts[codes[i]]++;
+            }
+            return findLargestCount(counts);
+        }
+
+        // Too many possible patterns for a table, so equal codes are grouped by sorting instead
+        int[] sorted = Arrays.copyOf(codes, size);
+        Arrays.sort(sorted);
+        int finalCode = -1;
+        int numOfWords = 0;
+        int start = 0;
+        while (start < size) {
+            int end = start + 1;
+            while (end < size && sorted[end] == sorted[start]) {
+                end++;
+            }
+            if (end - start > numOfWords) {
+                numOfWords = end - start;
+                finalCode = sorted[start];
+            }
+            start = end;
+        }
+        return finalCode;
+    }
+
+    // Returns the index (packed pattern) with the largest count in the given table of counts.
+    // If there are multiple patterns with the same largest count, the smallest code is chosen.
+    public static int findLargestCount(int[] counts) {
+        int finalCode = -1;
+        int numOfWords = 0;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > numOfWords) {
+                numOfWords = counts[code];
+                finalCode = code;
+            }
+        }
+        return finalCode;
+    }
+
     // Behavior:
     // - This method finds the pattern associated with the largest number of words
     // Parameters: 
@@ -211,4 +535,165 @@ public class Absurdle  {
         return pattern;  
 
     }
+
+    // Behavior:
+    // - This method finds the same pattern as patternFor but packs it into an int with one
+    //   base-3 digit per square, without building any Strings or maps. Letters are counted in
+    //   the given 26-slot array, which is left cleared so it can be reused for the next word.
+    // Parameters:
+    // - word: the word the user is trying to guess
+    // - guess: the word the user would like to guess
+    // - letterCounts: a scratch array of 26 zeros used to count the letters of the word
+    // Returns:
+    // - int: the packed pattern. Words or guesses with characters outside of 'a' to 'z' fall
+    //   back to patternFor.
+    public static int patternCode(String word, String guess, int[] letterCounts) {
+        return patternCode(word, 0, guess, letterCounts);
+    }
+
+    // Behavior:
+    // - This method does the same thing as patternCode for a word that starts partway through a
+    //   sequence of letters (such as the packed letters of a WordIndex) and a guess of the same
+    //   length.
+    // Parameters:
+    // - letters: the letters holding the word the user is trying to guess
+    // - start: the position of the word's first letter in the letters
+    // - guess: the word the user would like to guess
+    // - letterCounts: a scratch array of 26 zeros used to count the letters of the word
+    // Returns:
+    // - int: the packed pattern. Words or guesses with characters outside of 'a' to 'z' fall
+    //   back to patternFor.
+    public static int patternCode(CharSequence letters, int start, CharSequence guess,
+                                  int[] letterCounts) {
+        int length = guess.length();
+        int greens = 0;
+
+        // Marks the green squares and counts the word's letters that are not already green
+        for (int i = 0; i < length; i++) {
+            char wordChar = letters.charAt(start + i);
+            char guessChar = guess.charAt(i);
+            if (wordChar < 'a' || wordChar > 'z' || guessChar < 'a' || guessChar > 'z') {
+                clearLetterCounts(letters, start, i, letterCounts);
+                String word = letters.subSequence(start, start + length).toString();
+                return patternCode(patternFor(word, guess.toString()));
+            }
+            if (wordChar == guessChar) {
+                greens |= 1 << i;
+            } else {
+                letterCounts[wordChar - 'a']++;
+            }
+        }
+
+        // Adds one digit per square - yellow squares use up the remaining letter counts
+        int code = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = GRAY_CODE;
+            if ((greens & (1 << i)) != 0) {
+                digit = GREEN_CODE;
+            } else if (letterCounts[guess.charAt(i) - 'a'] > 0) {
+                letterCounts[guess.charAt(i) - 'a']--;
+                digit = YELLOW_CODE;
+            }
+            code = code * 3 + digit;
+        }
+        clearLetterCounts(letters, start, length, letterCounts);
+        return code;
+    }
+
+    // Resets the counts of the given number of letters, starting at start, back to zero.
+    private static void clearLetterCounts(CharSequence letters, int start, int length,
+                                          int[] letterCounts) {
+        for (int i = start; i < start + length; i++) {
+            char wordChar = letters.charAt(i);
+            if (wordChar >= 'a' && wordChar <= 'z') {
+                letterCounts[wordChar - 'a'] = 0;
+            }
+        }
+    }
+
+    // Returns the packed code of a pattern made of green, yellow, and gray squares.
+    public static int patternCode(String pattern) {
+        int code = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            if (pattern.startsWith(GREEN, i)) {
+                code = code * 3 + GREEN_CODE;
+                i += GREEN.length();
+            } else if (pattern.startsWith(YELLOW, i)) {
+                code = code * 3 + YELLOW_CODE;
+                i += YELLOW.length();
+            } else {
+                code = code * 3 + GRAY_CODE;
+                i += GRAY.length();
+            }
+        }
+        return code;
+    }
+
+    // Returns the pattern of green, yellow, and gray squares for the given packed code of
+    // a word with the given length.
+    public static String renderPattern(int code, int wordLength) {
+        StringBuilder pattern = new StringBuilder();
+        for (int place = powerOfThree(wordLength - 1); place > 0; place /= 3) {
+            int digit = code / place % 3;
+            if (digit == GREEN_CODE) {
+                pattern.append(GREEN);
+            } else if (digit == YELLOW_CODE) {
+                pattern.append(YELLOW);
+            } else {
+                pattern.append(GRAY);
+            }
+        }
+        return pattern.toString();
+    }
+
+    // Returns 3 raised to the given power, which is the number of patterns for a word of
+    // that length. Powers too large for an int return Integer.MAX_VALUE.
+    public static int powerOfThree(int power) {
+        long result = 1;
+        for (int i = 0; i < power && result < Integer.MAX_VALUE; i++) {
+            result *= 3;
+        }
+        return (int) Math.min(result, Integer.MAX_VALUE);
+    }
+
+    // This class represents one worker of the parallel record. It finds the packed pattern of
+    // each word in its range and stores them in the shared codes array. The patterns are
+    // counted once all the workers are done, so no worker needs a table of every pattern.
+    private static class PatternCodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] words;
+        private final String guess;
+        private final int[] codes;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        // Constructs a worker for the words from start (inclusive) to end (exclusive) which
+        // splits its range in half until it has no more than chunkSize words.
+        public PatternCodeTask(String[] words, String guess, int[] codes, int start, int end,
+                               int chunkSize) {
+            this.words = words;
+            this.guess = guess;
+            this.codes = codes;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        // Finds the patterns of this worker's words, splitting the work if there is too much.
+        protected void compute() {
+            if (end - start > chunkSize) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new PatternCodeTask(words, guess, codes, start, middle, chunkSize),
+                          new PatternCodeTask(words, guess, codes, middle, end, chunkSize));
+                return;
+            }
+            int[] letterCounts = new int[26];
+            for (int i = start; i < end; i++) {
+                codes[i] = patternCode(words[i], guess, letterCounts);
+            }
+        }
+    }
 }
@@ -0,0 +1,241 @@
+// This class is a headless tool that analyzes every possible first guess of Absurdle for a
+// dictionary and word length. For each word in the dictionary it finds what record would do
+// with that word as the first guess: the pattern it would give, the number of words it would
+// keep, how many different patterns the guess can get and how many words get each pattern.
+// It then reports the best opening, which is the guess that keeps the fewest words.
+//
+// Guesses are analyzed by a pool of worker threads and written to a CSV file by the main
+// thread as soon as they are ready, in dictionary order. Workers can only run a fixed number
+// of guesses ahead of the writer, so memory stays bounded no matter how large the dictionary is.
+//
+// Each CSV row holds: guess, pattern, kept (words kept), patterns (number of different patterns),
+// distribution (every pattern code that some word gets, as "code:words", separated by spaces).
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public class AbsurdleBatch {
+    // The most rows that can be waiting to be written at once
+    public static final int WINDOW = 4096;
+
+    private final WordIndex index;
+    private final PatternMatrix matrix;
+    private final int threads;
+
+    // Constructs a batch over the given index, using the matrix if it is not null, with the
+    // given number of worker threads. Throws an IllegalArgumentException if there are no threads,
+    // or if the words are too long for their patterns to be packed (see Absurdle.MAX_PACKED_LENGTH).
+    public AbsurdleBatch(WordIndex index, PatternMatrix matrix, int threads) {
+        if (threads < 1 || index.wordLength() > Absurdle.MAX_PACKED_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        this.index = index;
+        this.matrix = matrix;
+        this.threads = threads;
+    }
+
+    // Runs a batch over the dictionary file and word length given on the command line, writing
+    // the rows to the given CSV file. The number of threads defaults to the number of processors,
+    // and a precomputed pattern matrix is used if "--matrix" is given.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("usage: AbsurdleBatch <dictionary> <word length> <output.csv> "
+                    + "[threads] [--matrix]");
+            return;
+        }
+        File dictionary = new File(args[0]);
+        int wordLength = Integer.parseInt(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3 && !args[3].startsWith("--")) {
+            threads = Integer.parseInt(args[3]);
+        }
+
+        WordIndex index = DictionaryLoader.load(dictionary, wordLength);
+        PatternMatrix matrix = null;
+        if (Arrays.asList(args).contains("--matrix")) {
+            matrix = PatternMatrix.load(dictionary, index);
+        }
+        long start = System.nanoTime();
+        String best;
+        try (Writer output = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(args[2]), StandardCharsets.UTF_8), 1 << 16)) {
+            best = new AbsurdleBatch(index, matrix, threads).run(output);
+        }
+        System.out.println("Analyzed " + index.size() + " guesses in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        System.out.println("Best opening: " + best);
+    }
+
+    // Behavior:
+    // - Analyzes every word in the index as a first guess, writing a header and then one row per
+    //   guess to the output in dictionary order.
+    // Parameters:
+    // - output: where the CSV rows are written
+    // Returns:
+    // - string: the best opening (the first guess, alphabetically, that keeps the fewest words)
+    //   followed by the number of words it keeps, or an empty String if the index has no words
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    // - if the thread is interrupted while waiting for the workers, an InterruptedException is thrown
+    public String run(Writer output) throws IOException, InterruptedException {
+        output.write("guess,pattern,kept,patterns,distribution\n");
+        int wordCount = index.size();
+        String[] pending = new String[WINDOW];
+        int[] pendingKept = new int[WINDOW];
+        Semaphore window = new Semaphore(WINDOW);
+        AtomicInteger nextGuess = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> {
+                Analyzer analyzer = new Analyzer();
+                try {
+                    while (true) {
+                        window.acquire();
+                        int guessIndex = nextGuess.getAndIncrement();
+                        if (guessIndex >= wordCount) {
+                            window.release();
+                            return;
+                        }
+                        String row = analyzer.analyze(guessIndex);
+                        synchronized (pending) {
+                            pending[guessIndex % WINDOW] = row;
+                            pendingKept[guessIndex % WINDOW] = analyzer.kept;
+                            pending.notifyAll();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // The batch was stopped
+                } catch (RuntimeException e) {
+                    failure.set(e);
+                    synchronized (pending) {
+                        pending.notifyAll();
+                    }
+                }
+            });
+        }
+
+        // Writes the rows in order, freeing a place in the window for each row written
+        int bestGuess = -1;
+        int bestKept = Integer.MAX_VALUE;
+        try {
+            for (int guessIndex = 0; guessIndex < wordCount; guessIndex++) {
+                String row;
+                int kept;
+                synchronized (pending) {
+                    while (pending[guessIndex % WINDOW] == null && failure.get() == null) {
+                        pending.wait();
+                    }
+                    if (failure.get() != null) {
+                        throw new IllegalStateException(failure.get());
+                    }
+                    row = pending[guessIndex % WINDOW];
+                    kept = pendingKept[guessIndex % WINDOW];
+                    pending[guessIndex % WINDOW] = null;
+                }
+                window.release();
+                output.write(row);
+                if (kept < bestKept) {
+                    bestKept = kept;
+                    bestGuess = guessIndex;
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        if (bestGuess < 0) {
+            return "";
+        }
+        return index.word(bestGuess) + " " + bestKept;
+    }
+
+    // This class analyzes guesses for one worker thread, reusing its arrays between guesses.
+    private class Analyzer {
+        private final int[] codes;
+        private final int[] counts;
+        private final int[] letterCounts;
+        private final StringBuilder row;
+
+        // The number of words kept by the most recently analyzed guess
+        public int kept;
+
+        // Constructs an analyzer for the index of the batch.
+        public Analyzer() {
+            codes = new int[index.size()];
+            int patternCount = Absurdle.powerOfThree(index.wordLength());
+            if (patternCount <= Absurdle.MAX_TABLE_SIZE) {
+                counts = new int[patternCount];
+            } else {
+                counts = null;
+            }
+            letterCounts = new int[26];
+            row = new StringBuilder();
+        }
+
+        // Returns the CSV row for the word at the given index as the first guess.
+        public String analyze(int guessIndex) {
+            String guess = index.word(guessIndex);
+            for (int i = 0; i < codes.length; i++) {
+                if (matrix != null) {
+                    codes[i] = matrix.pattern(guessIndex, i);
+                } else {
+                    codes[i] = index.patternCode(i, guess, letterCounts);
+                }
+            }
+
+            row.setLength(0);
+            int finalCode;
+            int patterns = 0;
+            StringBuilder distribution = new StringBuilder();
+            if (counts != null) {
+                for (int code : codes) {
+                    counts[code]++;
+                }
+                finalCode = Absurdle.findLargestCount(counts);
+                kept = counts[finalCode];
+                for (int code = 0; code < counts.length; code++) {
+                    if (counts[code] > 0) {
+                        appendPattern(distribution, code, counts[code]);
+                        patterns++;
+                        counts[code] = 0;
+                    }
+                }
+            } else {
+                // Too many possible patterns for a table, so equal codes are grouped by sorting
+                Arrays.sort(codes);
+                finalCode = -1;
+                kept = 0;
+                int start = 0;
+                while (start < codes.length) {
+                    int end = start + 1;
+                    while (end < codes.length && codes[end] == codes[start]) {
+                        end++;
+                    }
+                    if (end - start > kept) {
+                        kept = end - start;
+                        finalCode = codes[start];
+                    }
+                    appendPattern(distribution, codes[start], end - start);
+                    patterns++;
+                    start = end;
+                }
+            }
+            row.append(guess).append(',').append(Absurdle.renderPattern(finalCode, index.wordLength()));
+            row.append(',').append(kept).append(',').append(patterns).append(',');
+            row.append(distribution).append('\n');
+            return row.toString();
+        }
+
+        // Adds "code:words" for one pattern to the distribution, separated by a space.
+        private void appendPattern(StringBuilder distribution, int code, int words) {
+            if (distribution.length() > 0) {
+                distribution.append(' ');
+            }
+            distribution.append(code).append(':').append(words);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+// This class represents a single game of Absurdle. Many games can be played at the same time
+// from one shared WordIndex (and PatternMatrix and PartitionCache, if there are any), since the
+// index and matrix are never changed and the cache is safe to share.
+// Each game only keeps its own bitset of remaining words and the patterns it has given out.
+// A single game is not safe to play from more than one thread at a time.
+
+import java.util.*;
+
+public class AbsurdleGame {
+    private final WordIndex index;
+    private final PatternMatrix matrix;
+    private final PartitionCache cache;
+    private final LookaheadSearch lookahead;
+    private final CandidateSet words;
+    private final List<String> patterns;
+    private long totalMoveNanos;
+    private long slowestMoveNanos;
+
+    // Constructs a new game over every word in the given index.
+    public AbsurdleGame(WordIndex index) {
+        this(index, null, null);
+    }
+
+    // Constructs a new game over every word in the given matrix's index, looking up patterns
+    // in the matrix.
+    public AbsurdleGame(PatternMatrix matrix) {
+        this(matrix.index(), matrix, null);
+    }
+
+    // Constructs a new game over every word in the given index, looking up patterns in the
+    // given matrix and reusing moves saved in the given cache. The matrix and cache may be null.
+    // Throws an IllegalArgumentException if the index has no words.
+    public AbsurdleGame(WordIndex index, PatternMatrix matrix, PartitionCache cache) {
+        this(index, matrix, cache, null);
+    }
+
+    // Constructs a new hard mode game over every word in the given search's index, where
+    // Absurdle looks ahead with the search to choose each pattern.
+    public AbsurdleGame(LookaheadSearch lookahead) {
+        this(lookahead.index(), lookahead.matrix(), null, lookahead);
+    }
+
+    // Constructs a new game over every word in the given index. Every other parameter may be null.
+    private AbsurdleGame(WordIndex index, PatternMatrix matrix, PartitionCache cache,
+                         LookaheadSearch lookahead) {
+        if (index.size() == 0) {
+            throw new IllegalArgumentException();
+        }
+        this.index = index;
+        this.matrix = matrix;
+        this.cache = cache;
+        this.lookahead = lookahead;
+        this.words = index.all();
+        this.patterns = new ArrayList<>();
+    }
+
+    // Behavior:
+    // - Makes a guess, narrowing the remaining words to the largest set that share a pattern.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // Returns:
+    // - string: the pattern of the guess (see Absurdle.record)
+    // Exceptions:
+    // - if the length of the guess is incorrect, an IllegalArgumentException is thrown
+    // - if the game is already finished, an IllegalStateException is thrown
+    public String guess(String guess) {
+        if (isFinished()) {
+            throw new IllegalStateException();
+        }
+        if (guess.length() != index.wordLength()) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        String pattern;
+        if (lookahead != null) {
+            pattern = lookahead.record(guess, words);
+        } else if (cache != null) {
+            pattern = cache.record(guess, index, words, matrix);
+        } else if (matrix != null) {
+            pattern = Absurdle.record(guess, words, matrix);
+        } else {
+            pattern = Absurdle.record(guess, index, words);
+        }
+        long elapsed = System.nanoTime() - start;
+        totalMoveNanos += elapsed;
+        slowestMoveNanos = Math.max(slowestMoveNanos, elapsed);
+        patterns.add(pattern);
+        return pattern;
+    }
+
+    // Returns true if the user has guessed the word and false otherwise.
+    public boolean isFinished() {
+        return Absurdle.isFinished(patterns);
+    }
+
+    // Returns the patterns given out so far, in the order they were given.
+    public List<String> patterns() {
+        return Collections.unmodifiableList(patterns);
+    }
+
+    // Returns the number of words that could still be the secret word.
+    public int remaining() {
+        return words.size();
+    }
+
+    // Returns the number of guesses made so far.
+    public int guesses() {
+        return patterns.size();
+    }
+
+    // Returns the total time, in nanoseconds, spent choosing patterns for this game's guesses.
+    public long totalMoveNanos() {
+        return totalMoveNanos;
+    }
+
+    // Returns the longest time, in nanoseconds, spent choosing the pattern for a single guess.
+    public long slowestMoveNanos() {
+        return slowestMoveNanos;
+    }
+
+    // Returns an estimate of the number of bytes used by this game: the bitset of remaining
+    // words (which may be shared with other games) and the patterns given out. The bitset of
+    // every word belongs to the index, so it is not counted while the game is still using it.
+    public long memoryBytes() {
+        long bytes = 0;
+        if (words.bits() != index.all().bits()) {
+            bytes += words.sizeInBytes();
+        }
+        for (String pattern : patterns) {
+            bytes += 40 + 2L * pattern.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,281 @@
+// This class runs many games of Absurdle at once over a simple line protocol on a local socket,
+// so that thousands of simultaneous games can be load tested. Every connection plays its own
+// game, and all games share one dictionary index. Each connection runs on its own virtual
+// thread when the JVM supports them, and on a pooled platform thread otherwise.
+//
+// After connecting, the server sends "READY <word length> <number of words>". The client can
+// then send any of these commands, one per line:
+//   GUESS <word>  - replies "PATTERN <pattern> <remaining words>", or "DONE <pattern> <guesses>"
+//                   once the word has been guessed
+//   STATS         - replies "STATS" followed by the server-wide statistics (see stats)
+//   QUIT          - closes the connection
+// Invalid commands reply with "ERROR <reason>".
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+public class AbsurdleServer {
+    public static final int DEFAULT_PORT = 7345;
+
+    // The most time a hard mode game spends looking ahead for a single move
+    public static final long HARD_MODE_BUDGET_MILLIS = 200;
+
+    private final WordIndex index;
+    private final PatternMatrix matrix;
+    private final PartitionCache cache;
+    private final LookaheadSearch hardMode;
+    private final AtomicInteger activeGames;
+    private final AtomicLong gamesStarted;
+    private final AtomicLong gamesFinished;
+    private final AtomicLong moves;
+    private final AtomicLong totalMoveNanos;
+    private final AtomicLong slowestMoveNanos;
+    private final AtomicLong gameBytes;
+
+    // Move latencies counted by power of two: bucket i counts moves under 2^i nanoseconds
+    private final AtomicLongArray latencyBuckets;
+
+    // The socket being served on, or null if serve is not running, and whether stop was called
+    private volatile ServerSocket serverSocket;
+    private volatile boolean stopped;
+
+    // Constructs a server for games over the given index. The matrix, cache and hard mode search
+    // may be null, and if they are not, they must only be used with the same index. If there is
+    // a hard mode search, every game is played in hard mode.
+    public AbsurdleServer(WordIndex index, PatternMatrix matrix, PartitionCache cache,
+                          LookaheadSearch hardMode) {
+        this.index = index;
+        this.matrix = matrix;
+        this.cache = cache;
+        this.hardMode = hardMode;
+        this.activeGames = new AtomicInteger();
+        this.gamesStarted = new AtomicLong();
+        this.gamesFinished = new AtomicLong();
+        this.moves = new AtomicLong();
+        this.totalMoveNanos = new AtomicLong();
+        this.slowestMoveNanos = new AtomicLong();
+        this.gameBytes = new AtomicLong();
+        this.latencyBuckets = new AtomicLongArray(64);
+    }
+
+    // Starts a server with the dictionary file, word length and (optionally) port given on the
+    // command line. A precomputed pattern matrix is used if "--matrix" is also given, and a cache
+    // of moves shared by every game is used if "--cache <megabytes>" is given. Games are played
+    // in hard mode, looking the given number of guesses ahead, if "--hard <depth>" is given.
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: AbsurdleServer <dictionary> <word length> [port] "
+                    + "[--matrix] [--cache <megabytes>] [--hard <depth>]");
+            return;
+        }
+        File dictionary = new File(args[0]);
+        int wordLength = Integer.parseInt(args[1]);
+        int port = DEFAULT_PORT;
+        if (args.length > 2 && !args[2].startsWith("--")) {
+            port = Integer.parseInt(args[2]);
+        }
+
+        WordIndex index = DictionaryLoader.load(dictionary, wordLength);
+        PatternMatrix matrix = null;
+        if (Arrays.asList(args).contains("--matrix")) {
+            matrix = PatternMatrix.load(dictionary, index);
+        }
+        PartitionCache cache = null;
+        int cacheOption = Arrays.asList(args).indexOf("--cache");
+        if (cacheOption >= 0 && cacheOption + 1 < args.length) {
+            cache = new PartitionCache(Long.parseLong(args[cacheOption + 1]) * 1024 * 1024);
+        }
+        LookaheadSearch hardMode = null;
+        int hardOption = Arrays.asList(args).indexOf("--hard");
+        if (hardOption >= 0 && hardOption + 1 < args.length) {
+            hardMode = new LookaheadSearch(index, matrix, Integer.parseInt(args[hardOption + 1]),
+                HARD_MODE_BUDGET_MILLIS, LookaheadSearch.DEFAULT_BRANCH_LIMIT, ForkJoinPool.commonPool());
+        }
+        AbsurdleServer server = new AbsurdleServer(index, matrix, cache, hardMode);
+        System.out.println("Serving " + index.size() + " words of length " + wordLength
+                + " on port " + port);
+        server.serve(port);
+    }
+
+    // Behavior:
+    // - Accepts connections on the given port of the loopback address until stop is called, the
+    //   thread is interrupted or the socket fails, playing one game per connection. An interrupt
+    //   is only noticed once the next connection is accepted, so stop is the way to end a server
+    //   that is waiting for connections.
+    // Parameters:
+    // - port: the port to listen on
+    // Exceptions:
+    // - if the socket cannot be opened, an IOException is thrown
+    public void serve(int port) throws IOException {
+        ExecutorService executor = newSessionExecutor();
+        try (ServerSocket socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress())) {
+            serverSocket = socket;
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                Socket client;
+                try {
+                    client = socket.accept();
+                } catch (SocketException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    throw e;
+                }
+                executor.execute(() -> play(client));
+            }
+        } finally {
+            serverSocket = null;
+            executor.shutdownNow();
+        }
+    }
+
+    // Stops serve by closing its socket, which wakes it up if it is waiting for a connection.
+    // Games that are already being played are not waited for.
+    public void stop() {
+        stopped = true;
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The socket is closed either way
+            }
+        }
+    }
+
+    // Plays one game with the client on the other end of the given socket, until the client
+    // quits or disconnects.
+    private void play(Socket socket) {
+        AbsurdleGame game = newGame();
+        activeGames.incrementAndGet();
+        gamesStarted.incrementAndGet();
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                 new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("READY " + index.wordLength() + " " + index.size());
+            String line = in.readLine();
+            while (line != null && !line.trim().equalsIgnoreCase("QUIT")) {
+                out.println(respond(game, line.trim()));
+                line = in.readLine();
+            }
+        } catch (IOException e) {
+            // The client disconnected, which ends its game
+        } finally {
+            activeGames.decrementAndGet();
+            if (game.isFinished()) {
+                gamesFinished.incrementAndGet();
+            }
+        }
+    }
+
+    // Returns the reply to a single command from the client playing the given game. A command
+    // that fails replies with an error instead of ending the connection.
+    private String respond(AbsurdleGame game, String command) {
+        try {
+            return reply(game, command);
+        } catch (RuntimeException e) {
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return "ERROR " + reason;
+        }
+    }
+
+    // Returns the reply to a single command, which may throw if the move cannot be made.
+    private String reply(AbsurdleGame game, String command) {
+        String[] parts = command.split("\\s+");
+        if (parts[0].equalsIgnoreCase("STATS")) {
+            return "STATS " + stats();
+        }
+        if (!parts[0].equalsIgnoreCase("GUESS") || parts.length != 2) {
+            return "ERROR unknown command";
+        }
+        if (game.isFinished()) {
+            return "ERROR game is finished";
+        }
+        if (parts[1].length() != index.wordLength()) {
+            return "ERROR guess must have " + index.wordLength() + " letters";
+        }
+
+        long bytesBefore = game.memoryBytes();
+        long slowestBefore = game.slowestMoveNanos();
+        long nanosBefore = game.totalMoveNanos();
+        String pattern = game.guess(parts[1]);
+        recordMove(game.totalMoveNanos() - nanosBefore);
+        gameBytes.addAndGet(game.memoryBytes() - bytesBefore);
+        if (game.slowestMoveNanos() > slowestBefore) {
+            slowestMoveNanos.accumulateAndGet(game.slowestMoveNanos(), Math::max);
+        }
+
+        if (game.isFinished()) {
+            return "DONE " + pattern + " " + game.guesses();
+        }
+        return "PATTERN " + pattern + " " + game.remaining();
+    }
+
+    // Starts a new game and adds its memory to the total used by every game.
+    private AbsurdleGame newGame() {
+        AbsurdleGame game;
+        if (hardMode != null) {
+            game = new AbsurdleGame(hardMode);
+        } else {
+            game = new AbsurdleGame(index, matrix, cache);
+        }
+        gameBytes.addAndGet(game.memoryBytes());
+        return game;
+    }
+
+    // Adds a single move that took the given number of nanoseconds to the statistics.
+    private void recordMove(long nanos) {
+        moves.incrementAndGet();
+        totalMoveNanos.addAndGet(nanos);
+        latencyBuckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(1, nanos)) - 1);
+    }
+
+    // Returns the server-wide statistics as "key=value" pairs separated by spaces: the number of
+    // active, started and finished games, the number of moves, the average, 99th percentile and
+    // slowest move time in microseconds, the average memory per game in bytes, and the cache
+    // statistics if there is a cache.
+    public String stats() {
+        long moveCount = moves.get();
+        long games = Math.max(1, gamesStarted.get());
+        long averageMicros = moveCount == 0 ? 0 : totalMoveNanos.get() / moveCount / 1000;
+        return "active=" + activeGames.get() + " started=" + gamesStarted.get()
+            + " finished=" + gamesFinished.get() + " moves=" + moveCount
+            + " avgMoveMicros=" + averageMicros + " p99MoveMicros=" + percentileMicros(0.99)
+            + " maxMoveMicros=" + slowestMoveNanos.get() / 1000
+            + " bytesPerGame=" + gameBytes.get() / games
+            + (cache != null ? " " + cache.stats() : "");
+    }
+
+    // Returns an upper bound, in microseconds, on the given percentile of move times.
+    private long percentileMicros(double percentile) {
+        long total = 0;
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            total += latencyBuckets.get(i);
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            seen += latencyBuckets.get(i);
+            if (total > 0 && seen >= target) {
+                return (1L << (i + 1)) / 1000;
+            }
+        }
+        return 0;
+    }
+
+    // Returns an executor that runs each task on a new virtual thread if this JVM has them,
+    // or on a cached pool of platform threads if it does not.
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+// This class represents the set of words that could still be the secret word in a game of
+// Absurdle, stored as a bitset over the indexes of a WordIndex. Bit i is set if word i is still
+// a candidate. Narrowing the set replaces its array of bits with a new one instead of changing
+// the old array, so an array of bits that has been handed out never changes.
+
+import java.util.*;
+
+public class CandidateSet {
+    private long[] bits;
+    private int size;
+
+    // The fingerprint of fingerprintBits, kept so it is only found once per array of bits
+    private long[] fingerprintBits;
+    private long fingerprint;
+
+    // Constructs a candidate set from the given bits, which hold size set bits.
+    public CandidateSet(long[] bits, int size) {
+        this.bits = bits;
+        this.size = size;
+    }
+
+    // Returns a candidate set with every one of the given number of words in it.
+    public static CandidateSet all(int wordCount) {
+        long[] bits = new long[wordsFor(wordCount)];
+        Arrays.fill(bits, -1L);
+        if (wordCount % 64 != 0) {
+            bits[bits.length - 1] = (1L << wordCount) - 1;
+        }
+        return new CandidateSet(bits, wordCount);
+    }
+
+    // Returns the number of longs needed for a bitset of the given number of words.
+    public static int wordsFor(int wordCount) {
+        return (wordCount + 63) >>> 6;
+    }
+
+    // Returns the number of words in this set.
+    public int size() {
+        return size;
+    }
+
+    // Returns true if there are no words in this set and false otherwise.
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Returns true if the word with the given index is in this set and false otherwise.
+    public boolean contains(int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // Returns the smallest index in this set that is at least from, or -1 if there is none.
+    public int nextIndex(int from) {
+        int slot = from >>> 6;
+        if (slot >= bits.length) {
+            return -1;
+        }
+        long word = bits[slot] & (-1L << from);
+        while (word == 0) {
+            slot++;
+            if (slot == bits.length) {
+                return -1;
+            }
+            word = bits[slot];
+        }
+        return slot * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    // Returns the array of bits currently backing this set. The array must not be modified.
+    public long[] bits() {
+        return bits;
+    }
+
+    // Replaces the words in this set with the given bits, which hold size set bits.
+    public void replace(long[] bits, int size) {
+        this.bits = bits;
+        this.size = size;
+    }
+
+    // Returns a 64-bit hash of the words in this set. Sets with the same words always have the
+    // same fingerprint, and sets with different words almost never do.
+    public long fingerprint() {
+        if (fingerprintBits != bits) {
+            long hash = 0xcbf29ce484222325L;
+            for (long word : bits) {
+                hash = (hash ^ word) * 0x100000001b3L;
+                hash ^= hash >>> 29;
+            }
+            fingerprint = hash ^ size;
+            fingerprintBits = bits;
+        }
+        return fingerprint;
+    }
+
+    // Returns the number of bytes used by this set's bits.
+    public long sizeInBytes() {
+        return 8L * bits.length;
+    }
+
+    // Returns the words in this set, in sorted order, looked up in the given index.
+    public List<String> words(WordIndex index) {
+        List<String> words = new ArrayList<>();
+        for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+            words.add(index.word(i));
+        }
+        return words;
+    }
+
+    // Returns true if the given object is a candidate set with the same words and false otherwise.
+    public boolean equals(Object other) {
+        if (!(other instanceof CandidateSet)) {
+            return false;
+        }
+        CandidateSet otherSet = (CandidateSet) other;
+        return size == otherSet.size && Arrays.equals(bits, otherSet.bits);
+    }
+
+    // Returns a hash code based on the words in this set.
+    public int hashCode() {
+        return Arrays.hashCode(bits);
+    }
+}
@@ -0,0 +1,173 @@
+// This class loads the words of one length from a UTF-8 dictionary file straight into a
+// WordIndex. The file is memory-mapped and scanned once, byte by byte, splitting words on
+// whitespace the same way Scanner.next does. Only words of the chosen length are kept, packed
+// one after another into a char array, which is then sorted and has its duplicates removed in
+// place. No String is made for a word unless it has letters outside of ASCII.
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+public class DictionaryLoader {
+    // The most bytes of the file that are mapped at once
+    public static final int MAX_MAPPED_BYTES = 1 << 28;
+
+    private final int wordLength;
+    private char[] letters;
+    private int size;
+    private byte[] token;
+    private int tokenLength;
+    private boolean tokenIsAscii;
+
+    // Constructs a loader that keeps words of the given length.
+    private DictionaryLoader(int wordLength) {
+        this.wordLength = wordLength;
+        this.letters = new char[wordLength * 1024];
+        this.token = new byte[wordLength * 4];
+        this.tokenIsAscii = true;
+    }
+
+    // Behavior:
+    // - Loads the words of the given length from the dictionary file, sorted and without duplicates.
+    // Parameters:
+    // - dictionary: a UTF-8 file of words separated by whitespace
+    // - wordLength: the length of the words to keep
+    // Returns:
+    // - WordIndex: the sorted words of the given length
+    // Exceptions:
+    // - if the word length is less than one, an IllegalArgumentException is thrown
+    // - if the file cannot be read, an IOException is thrown
+    public static WordIndex load(File dictionary, int wordLength) throws IOException {
+        if (wordLength < 1) {
+            throw new IllegalArgumentException();
+        }
+        DictionaryLoader loader = new DictionaryLoader(wordLength);
+        try (FileChannel channel = FileChannel.open(dictionary.toPath())) {
+            long fileSize = channel.size();
+            for (long position = 0; position < fileSize; position += MAX_MAPPED_BYTES) {
+                long length = Math.min(MAX_MAPPED_BYTES, fileSize - position);
+                loader.scan(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        loader.endToken();
+        return loader.sortedIndex();
+    }
+
+    // Scans every byte of the given part of the file. A word may continue from the previous part.
+    private void scan(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        for (int i = 0; i < limit; i++) {
+            byte next = bytes.get(i);
+            if (isWhitespace(next)) {
+                endToken();
+            } else {
+                // Words too long to ever have the right length are only counted, not stored
+                if (tokenLength < token.length) {
+                    token[tokenLength] = next;
+                }
+                tokenLength++;
+                tokenIsAscii &= next >= 0;
+            }
+        }
+    }
+
+    // Finishes the word being scanned, keeping it if it has the right length.
+    private void endToken() {
+        if (tokenLength == 0) {
+            return;
+        }
+        if (tokenIsAscii) {
+            if (tokenLength == wordLength) {
+                int start = reserveWord();
+                for (int i = 0; i < wordLength; i++) {
+                    letters[start + i] = (char) token[i];
+                }
+            }
+        } else if (tokenLength <= token.length) {
+            // Rare case: a multi-byte word, which may also hold non-ASCII whitespace
+            String text = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+            for (String word : text.split("\\p{javaWhitespace}+")) {
+                if (word.length() == wordLength) {
+                    word.getChars(0, wordLength, letters, reserveWord());
+                }
+            }
+        }
+        tokenLength = 0;
+        tokenIsAscii = true;
+    }
+
+    // Makes room for one more word and returns the position of its first letter.
+    private int reserveWord() {
+        if ((size + 1) * wordLength > letters.length) {
+            letters = Arrays.copyOf(letters, letters.length * 2);
+        }
+        size++;
+        return (size - 1) * wordLength;
+    }
+
+    // Sorts the kept words, removes duplicates and returns them as a WordIndex.
+    private WordIndex sortedIndex() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(order, new int[size], 0, size);
+
+        char[] sorted = new char[size * wordLength];
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || compare(order[i], order[i - 1]) != 0) {
+                System.arraycopy(letters, order[i] * wordLength, sorted, unique * wordLength, wordLength);
+                unique++;
+            }
+        }
+        return WordIndex.ofSortedLetters(Arrays.copyOf(sorted, unique * wordLength), unique, wordLength);
+    }
+
+    // Merge sorts the word numbers from start (inclusive) to end (exclusive) by their words,
+    // using the scratch array of the same size.
+    private void sort(int[] order, int[] scratch, int start, int end) {
+        if (end - start < 2) {
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        sort(order, scratch, start, middle);
+        sort(order, scratch, middle, end);
+        if (compare(order[middle - 1], order[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, start, scratch, start, end - start);
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; i++) {
+            if (right >= end || (left < middle && compare(scratch[left], scratch[right]) <= 0)) {
+                order[i] = scratch[left];
+                left++;
+            } else {
+                order[i] = scratch[right];
+                right++;
+            }
+        }
+    }
+
+    // Compares the two kept words with the given numbers in the same order as String.compareTo.
+    private int compare(int first, int second) {
+        int firstStart = first * wordLength;
+        int secondStart = second * wordLength;
+        for (int i = 0; i < wordLength; i++) {
+            int difference = letters[firstStart + i] - letters[secondStart + i];
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    // Returns true if the given byte is an ASCII whitespace character (as defined by
+    // Character.isWhitespace) and false otherwise.
+    private static boolean isWhitespace(byte next) {
+        return next == ' ' || (next >= '\t' && next <= '\r') || (next >= 0x1c && next <= 0x1f);
+    }
+}
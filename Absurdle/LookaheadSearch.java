@@ -0,0 +1,400 @@
+// This class chooses Absurdle's patterns for a harder version of the game. Instead of keeping
+// the largest set of words, it looks several guesses ahead and keeps the set of words that
+// forces the user to make the most guesses, assuming the user then plays as well as possible.
+//
+// The value of a set of words is the number of guesses the user still needs in the worst case,
+// with ties broken by the number of words that are left. It is packed into a long as
+// (guesses << 32) + words. A set of one word needs one guess. When the search runs out of depth
+// or time, a larger set is given the lower bound of two guesses. The user's side only tries
+// guesses from the remaining words, and at most branchLimit of them (the ones that split the
+// words best), and both sides are searched with alpha-beta pruning. Values of whole sets are
+// remembered between moves and games, and Absurdle's choices for one move are evaluated in
+// parallel. Deeper searches are tried one depth at a time until the time budget runs out, and
+// the deepest search that finished is used. A search is safe to share between games and threads.
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LookaheadSearch {
+    public static final int DEFAULT_BRANCH_LIMIT = 24;
+
+    // The most set values that are remembered before the memory is cleared
+    public static final int MAX_MEMO_ENTRIES = 1 << 18;
+
+    // The value of a set of words that takes one more guess and has no words left over
+    private static final long ONE_GUESS = 1L << 32;
+
+    // Bounds on every value, which leave room to add and subtract guesses without overflowing
+    private static final long LOWEST = -ONE_GUESS * 1024;
+    private static final long HIGHEST = ONE_GUESS * 1024;
+
+    // The number of words a partition looks at between checks of the deadline (a power of two)
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private final WordIndex index;
+    private final PatternMatrix matrix;
+    private final int depth;
+    private final long budgetNanos;
+    private final int branchLimit;
+    private final ForkJoinPool pool;
+    private final int allGreen;
+    private final ConcurrentHashMap<MemoKey, Long> memo;
+
+    // Behavior:
+    // - Constructs a search over the words in the given index.
+    // Parameters:
+    // - index: the dictionary words of the length chosen by the user
+    // - matrix: the patterns for the index, or null if there is no precomputed matrix
+    // - depth: the number of the user's guesses to look ahead (1 is the same as Absurdle.record)
+    // - budgetMillis: the most time to spend searching deeper for a single move
+    // - branchLimit: the most guesses to try for the user at each step
+    // - pool: the pool that Absurdle's choices are evaluated in
+    // Exceptions:
+    // - if the depth or branch limit is less than one, the budget is negative, or the words are
+    //   too long to count their patterns in a table, an IllegalArgumentException is thrown
+    public LookaheadSearch(WordIndex index, PatternMatrix matrix, int depth, long budgetMillis,
+                           int branchLimit, ForkJoinPool pool) {
+        if (depth < 1 || budgetMillis < 0 || branchLimit < 1
+                || Absurdle.powerOfThree(index.wordLength()) > Absurdle.MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        this.index = index;
+        this.matrix = matrix;
+        this.depth = depth;
+        this.budgetNanos = budgetMillis * 1000000;
+        this.branchLimit = branchLimit;
+        this.pool = pool;
+        this.allGreen = Absurdle.powerOfThree(index.wordLength()) - 1;
+        this.memo = new ConcurrentHashMap<>();
+    }
+
+    // Returns the words this search is over.
+    public WordIndex index() {
+        return index;
+    }
+
+    // Returns the precomputed patterns this search uses, or null if there are none.
+    public PatternMatrix matrix() {
+        return matrix;
+    }
+
+    // Behavior:
+    // - Does the same thing as Absurdle.record for a bitset of words, but keeps the set of words
+    //   that needs the most guesses to finish (see the class comment) instead of the largest set.
+    //   Ties are broken by the larger set, and then by the alphabetically first pattern.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - words: the words that could still be the secret word, which will then be updated to store
+    //   the set of words associated with the pattern returned
+    // Returns:
+    // - string: the pattern of the guess
+    // Exceptions:
+    // - if the set of words inputted by the user is empty or if the length of the guess is incorrect,
+    //   an IllegalArgumentException will be thrown
+    public String record(String guess, CandidateSet words) {
+        if (words.isEmpty() || guess.length() != index.wordLength()) {
+            throw new IllegalArgumentException();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+
+        // The move itself is always made, however long it takes
+        List<Bucket> buckets = partition(guess, index.indexOf(guess),
+            members(words.bits(), words.size()), words.bits().length, Long.MAX_VALUE);
+
+        // Looking one guess ahead is the same as keeping the largest set of words
+        long[] scores = new long[buckets.size()];
+        for (int i = 0; i < buckets.size(); i++) {
+            scores[i] = leafValue(buckets.get(i));
+        }
+        int chosen = best(buckets, scores);
+
+        for (int searchDepth = 1; searchDepth < depth && buckets.size() > 1; searchDepth++) {
+            long[] deeperScores = evaluate(buckets, searchDepth, deadline);
+            if (deeperScores == null || System.nanoTime() > deadline) {
+                break;
+            }
+            chosen = best(buckets, deeperScores);
+        }
+
+        Bucket bucket = buckets.get(chosen);
+        words.replace(bucket.bits, bucket.size);
+        return Absurdle.renderPattern(bucket.code, index.wordLength());
+    }
+
+    // Returns the value of each of Absurdle's choices when the user has the given number of
+    // guesses left to look ahead, evaluated in parallel, or null if the search was interrupted.
+    // An exception thrown while evaluating a choice is thrown again here.
+    private long[] evaluate(List<Bucket> buckets, int searchDepth, long deadline) {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (Bucket bucket : buckets) {
+            if (bucket.code == allGreen) {
+                tasks.add(() -> 0L);
+            } else {
+                tasks.add(() -> value(bucket.bits, bucket.size, searchDepth, LOWEST, HIGHEST, deadline));
+            }
+        }
+        long[] scores = new long[buckets.size()];
+        try {
+            List<Future<Long>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = results.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            // The caller keeps the last finished depth; whoever interrupted still needs to know
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return scores;
+    }
+
+    // Returns the index of the choice with the highest score, breaking ties by the larger set
+    // of words and then by the smaller pattern code.
+    private int best(List<Bucket> buckets, long[] scores) {
+        int chosen = 0;
+        for (int i = 1; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            Bucket current = buckets.get(chosen);
+            if (scores[i] > scores[chosen] || (scores[i] == scores[chosen]
+                    && (bucket.size > current.size
+                        || (bucket.size == current.size && bucket.code < current.code)))) {
+                chosen = i;
+            }
+        }
+        return chosen;
+    }
+
+    // Returns the value of a choice when there is no time or depth left to look further ahead.
+    private long leafValue(Bucket bucket) {
+        if (bucket.code == allGreen) {
+            return 0;
+        }
+        return leafValue(bucket.size);
+    }
+
+    // Returns the value of a set of the given number of words without looking ahead.
+    private static long leafValue(int size) {
+        if (size == 1) {
+            return ONE_GUESS;
+        }
+        return 2 * ONE_GUESS + size;
+    }
+
+    // Behavior:
+    // - Finds the value of a set of words when it is the user's turn to guess, looking the given
+    //   number of guesses ahead. Values outside of the range from alpha to beta are not needed
+    //   exactly, so the search stops early once it knows the value is outside of that range.
+    // Parameters:
+    // - bits: the bits of the set of words
+    // - size: the number of words in the set
+    // - searchDepth: the number of the user's guesses left to look ahead
+    // - alpha: a value Absurdle can already get elsewhere
+    // - beta: a value the user can already get elsewhere
+    // - deadline: the time (from System.nanoTime) at which the search stops looking ahead
+    // Returns:
+    // - long: the value of the set, or a bound on it if it is outside of alpha to beta
+    private long value(long[] bits, int size, int searchDepth, long alpha, long beta, long deadline) {
+        if (size == 1 || searchDepth == 0 || System.nanoTime() > deadline) {
+            return leafValue(size);
+        }
+        MemoKey key = new MemoKey(bits, searchDepth);
+        Long known = memo.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        int[] members = members(bits, size);
+        long best = HIGHEST;
+        for (int guessIndex : chooseGuesses(members, deadline)) {
+            List<Bucket> buckets = partition(index.word(guessIndex), guessIndex,
+                members, bits.length, deadline);
+            if (buckets == null) {
+                break;
+            }
+            buckets.sort((first, second) -> second.size - first.size);
+
+            // Absurdle picks the worst set for the user, unless the user already has a better guess
+            long bound = Math.min(beta, best);
+            long worst = LOWEST;
+            for (Bucket bucket : buckets) {
+                long next = ONE_GUESS;
+                if (bucket.code != allGreen) {
+                    next += value(bucket.bits, bucket.size, searchDepth - 1,
+                        Math.max(alpha, worst) - ONE_GUESS, bound - ONE_GUESS, deadline);
+                }
+                worst = Math.max(worst, next);
+                if (worst >= bound) {
+                    break;
+                }
+            }
+            best = Math.min(best, worst);
+            if (best <= alpha) {
+                break;
+            }
+        }
+        if (best == HIGHEST) {
+            // The time ran out before any guess was tried
+            return leafValue(size);
+        }
+
+        if (alpha < best && best < beta && System.nanoTime() <= deadline) {
+            if (memo.size() >= MAX_MEMO_ENTRIES) {
+                memo.clear();
+            }
+            memo.put(key, best);
+        }
+        return best;
+    }
+
+    // Returns the guesses the user should try for the given words: the (at most) branchLimit
+    // words among them whose largest set of words sharing a pattern is the smallest. Once the
+    // deadline has passed, only the words already tried are ranked.
+    private int[] chooseGuesses(int[] members, long deadline) {
+        // Large sets only consider an evenly spread sample of their words
+        int sampleSize = Math.min(members.length, 4 * branchLimit);
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = members[(int) ((long) i * members.length / sampleSize)];
+        }
+
+        int[] counts = new int[allGreen + 1];
+        int[] codes = new int[members.length];
+        int[] letterCounts = new int[26];
+        long[] ranked = new long[sampleSize];
+        int tried = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            if (i > 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            String guess = index.word(sample[i]);
+            int largest = 0;
+            for (int j = 0; j < members.length; j++) {
+                codes[j] = patternCode(guess, sample[i], members[j], letterCounts);
+                counts[codes[j]]++;
+                largest = Math.max(largest, counts[codes[j]]);
+            }
+            for (int code : codes) {
+                counts[code] = 0;
+            }
+            ranked[i] = ((long) largest << 32) | sample[i];
+            tried++;
+        }
+        Arrays.sort(ranked, 0, tried);
+
+        int[] guesses = new int[Math.min(branchLimit, tried)];
+        for (int i = 0; i < guesses.length; i++) {
+            guesses[i] = (int) ranked[i];
+        }
+        return guesses;
+    }
+
+    // Returns the sets of words that get each pattern for the given guess, in increasing order
+    // of pattern, or null if the deadline passes first. The guess index is the guess's position
+    // in the index, or negative if it is not in the index.
+    private List<Bucket> partition(String guess, int guessIndex, int[] members, int bitsLength,
+            long deadline) {
+        int[] codes = new int[members.length];
+        int[] letterCounts = new int[26];
+        int[] bucketOf = new int[allGreen + 1];
+        Arrays.fill(bucketOf, -1);
+        int bucketCount = 0;
+        for (int i = 0; i < members.length; i++) {
+            if ((i & (DEADLINE_CHECK_INTERVAL - 1)) == DEADLINE_CHECK_INTERVAL - 1
+                    && System.nanoTime() > deadline) {
+                return null;
+            }
+            codes[i] = patternCode(guess, guessIndex, members[i], letterCounts);
+            if (bucketOf[codes[i]] < 0) {
+                bucketOf[codes[i]] = 0;
+                bucketCount++;
+            }
+        }
+
+        List<Bucket> buckets = new ArrayList<>(bucketCount);
+        for (int code = 0; code <= allGreen; code++) {
+            if (bucketOf[code] >= 0) {
+                bucketOf[code] = buckets.size();
+                buckets.add(new Bucket(code, new long[bitsLength]));
+            }
+        }
+        for (int i = 0; i < members.length; i++) {
+            Bucket bucket = buckets.get(bucketOf[codes[i]]);
+            bucket.bits[members[i] >>> 6] |= 1L << members[i];
+            bucket.size++;
+        }
+        return buckets;
+    }
+
+    // Returns the packed pattern of the guess against the word at answerIndex, using the matrix
+    // when there is one and the guess is in the index.
+    private int patternCode(String guess, int guessIndex, int answerIndex, int[] letterCounts) {
+        if (matrix != null && guessIndex >= 0) {
+            return matrix.pattern(guessIndex, answerIndex);
+        }
+        return index.patternCode(answerIndex, guess, letterCounts);
+    }
+
+    // Returns the indexes of the words in the given bits, in increasing order.
+    private static int[] members(long[] bits, int size) {
+        int[] members = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < bits.length; slot++) {
+            long word = bits[slot];
+            while (word != 0) {
+                members[count] = slot * 64 + Long.numberOfTrailingZeros(word);
+                count++;
+                word &= word - 1;
+            }
+        }
+        return members;
+    }
+
+    // This class represents the set of words that get one pattern for a guess.
+    private static class Bucket {
+        public final int code;
+        public final long[] bits;
+        public int size;
+
+        // Constructs an empty set of words for the given pattern code.
+        public Bucket(int code, long[] bits) {
+            this.code = code;
+            this.bits = bits;
+        }
+    }
+
+    // This class represents a set of words and the number of guesses its value looked ahead.
+    private static class MemoKey {
+        public final long[] bits;
+        public final int depth;
+        private final int hash;
+
+        // Constructs a key for the given bits and depth.
+        public MemoKey(long[] bits, int depth) {
+            this.bits = bits;
+            this.depth = depth;
+            this.hash = Arrays.hashCode(bits) * 31 + depth;
+        }
+
+        // Returns true if the other object is a key for the same words and depth.
+        public boolean equals(Object other) {
+            if (!(other instanceof MemoKey)) {
+                return false;
+            }
+            MemoKey otherKey = (MemoKey) other;
+            return depth == otherKey.depth && Arrays.equals(bits, otherKey.bits);
+        }
+
+        // Returns a hash code based on the words and depth.
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+// This class represents a cache of Absurdle moves shared by many games. Absurdle always gives
+// the same pattern and keeps the same words for the same guess and set of remaining words, so
+// once a move has been made by one game, every later game in the same position can skip the
+// partition and reuse the result. Entries are keyed by the fingerprint of the set of remaining
+// words and the guess, and the least recently used entries are evicted to keep the cache under
+// a budget of bytes. A cache is safe to share between threads, and its entries are split into
+// stripes with their own locks so that games on many threads can use it at once.
+
+import java.util.*;
+
+public class PartitionCache {
+    // The estimated number of bytes each entry uses besides its bitsets and guess
+    public static final int ENTRY_OVERHEAD = 128;
+
+    // The number of stripes the entries are split across, which must be a power of two
+    public static final int STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    // Constructs an empty cache that holds at most the given number of bytes of entries. The
+    // entries are split by key across STRIPES stripes that each have an equal share of the
+    // budget and their own lock, so games looking up different moves rarely wait for each other.
+    // Throws an IllegalArgumentException if the budget is not positive.
+    public PartitionCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int stripeCount = (int) Math.min(STRIPES, Long.highestOneBit(maxBytes));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxBytes / stripeCount);
+        }
+    }
+
+    // Behavior:
+    // - Does the same thing as Absurdle.record for a bitset of words, but reuses the result of
+    //   an earlier identical move if there is one, and saves the result for later moves if not.
+    // Parameters:
+    // - guess: the word the user would like to guess
+    // - index: the dictionary words of the length chosen by the user
+    // - words: the words that could still be the secret word, which will then be updated to store
+    //   the largest set of words associated with the pattern returned
+    // - matrix: the patterns for the index, or null if there is no precomputed matrix
+    // Returns:
+    // - string: the pattern of the guess (which has the largest number of words associated with it)
+    // Exceptions:
+    // - if the set of words inputted by the user is empty or if the length of the guess is incorrect,
+    //   an IllegalArgumentException will be thrown
+    public String record(String guess, WordIndex index, CandidateSet words, PatternMatrix matrix) {
+        Key key = new Key(words.fingerprint(), guess, words.bits());
+        Stripe stripe = stripeFor(key);
+        Result result = stripe.get(key);
+        if (result != null) {
+            words.replace(result.bits, result.size);
+            return Absurdle.renderPattern(result.pattern, index.wordLength());
+        }
+
+        String pattern;
+        if (matrix != null) {
+            pattern = Absurdle.record(guess, words, matrix);
+        } else {
+            pattern = Absurdle.record(guess, index, words);
+        }
+        stripe.put(key, new Result(Absurdle.patternCode(pattern), words.bits(), words.size()));
+        return pattern;
+    }
+
+    // Returns the number of moves that were found in this cache.
+    public long hits() {
+        long hits = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.hits;
+            }
+        }
+        return hits;
+    }
+
+    // Returns the number of moves that were not found in this cache.
+    public long misses() {
+        long misses = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                misses += stripe.misses;
+            }
+        }
+        return misses;
+    }
+
+    // Returns the number of entries that have been evicted to stay within the budget.
+    public long evictions() {
+        long evictions = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evictions += stripe.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    // Returns the estimated number of bytes used by the entries in this cache.
+    public long bytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    // Returns the number of entries in this cache.
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    // Returns the cache statistics as "key=value" pairs separated by spaces. Each stripe is
+    // read on its own, so moves made while the statistics are gathered may be partly counted.
+    public String stats() {
+        return "cacheHits=" + hits() + " cacheMisses=" + misses() + " cacheEvictions=" + evictions()
+            + " cacheEntries=" + size() + " cacheBytes=" + bytes();
+    }
+
+    // Returns the stripe that holds the given key.
+    private Stripe stripeFor(Key key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    // This class represents one stripe of the cache: the entries whose keys hash to it, kept in
+    // least recently used order under the stripe's share of the budget. Every field is guarded
+    // by the stripe's lock.
+    private static class Stripe {
+        private final long maxBytes;
+        private final LinkedHashMap<Key, Result> entries;
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        // Constructs an empty stripe that holds at most the given number of bytes of entries.
+        public Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        // Returns the result saved for the given key, or null if there is none.
+        public synchronized Result get(Key key) {
+            Result result = entries.get(key);
+            if (result != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return result;
+        }
+
+        // Saves the result for the given key, evicting the least recently used entries until the
+        // stripe is back under its budget. Results larger than the stripe's budget are not saved.
+        public synchronized void put(Key key, Result result) {
+            long entryBytes = entryBytes(key, result);
+            if (entryBytes > maxBytes || entries.containsKey(key)) {
+                return;
+            }
+            entries.put(key, result);
+            bytes += entryBytes;
+            Iterator<Map.Entry<Key, Result>> iter = entries.entrySet().iterator();
+            while (bytes > maxBytes && iter.hasNext()) {
+                Map.Entry<Key, Result> eldest = iter.next();
+                bytes -= entryBytes(eldest.getKey(), eldest.getValue());
+                iter.remove();
+                evictions++;
+            }
+        }
+
+        // Returns the estimated number of bytes used by an entry with the given key and result.
+        private static long entryBytes(Key key, Result result) {
+            return ENTRY_OVERHEAD + 2L * key.guess.length() + 8L * key.bits.length
+                + 8L * result.bits.length;
+        }
+    }
+
+    // This class represents a move: a guess made against a set of remaining words. The bits of
+    // the set are kept so that two sets with the same fingerprint are never mistaken for each other.
+    private static class Key {
+        public final long fingerprint;
+        public final String guess;
+        public final long[] bits;
+
+        // Constructs a key for the given guess against the set with the given fingerprint and bits.
+        public Key(long fingerprint, String guess, long[] bits) {
+            this.fingerprint = fingerprint;
+            this.guess = guess;
+            this.bits = bits;
+        }
+
+        // Returns true if the other object is a key for the same guess and set of words.
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            return fingerprint == otherKey.fingerprint && guess.equals(otherKey.guess)
+                && (bits == otherKey.bits || Arrays.equals(bits, otherKey.bits));
+        }
+
+        // Returns a hash code based on the fingerprint and the guess.
+        public int hashCode() {
+            return Long.hashCode(fingerprint) * 31 + guess.hashCode();
+        }
+    }
+
+    // This class represents the result of a move: the packed pattern given out and the bits of
+    // the words that are left, which are shared by every game that makes the same move.
+    private static class Result {
+        public final int pattern;
+        public final long[] bits;
+        public final int size;
+
+        // Constructs a result with the given pattern and remaining words.
+        public Result(int pattern, long[] bits, int size) {
+            this.pattern = pattern;
+            this.bits = bits;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+// This class represents a precomputed table of Absurdle patterns for a fixed dictionary and
+// word length. Row g, column a holds the packed pattern (see Absurdle.patternCode) that guess
+// g would get if a were the secret word, so looking up a pattern never has to compare letters.
+// A matrix can be kept in memory or saved next to its dictionary file and memory-mapped back.
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.stream.*;
+
+public class PatternMatrix {
+    // Marks the start of a saved matrix file, followed by the file format version
+    public static final int MAGIC = 0x41425344;
+    public static final int VERSION = 1;
+
+    // The number of bytes before the first row of a saved matrix file
+    public static final int HEADER_SIZE = 48;
+
+    // The longest word whose patterns fit in a 2-byte cell (3^10 = 59049)
+    public static final int MAX_WORD_LENGTH = 10;
+
+    private final WordIndex index;
+    private final int cellSize;
+    private final ByteBuffer[] chunks;
+    private final int rowsPerChunk;
+
+    // Constructs a matrix over the given rows, which have already been filled in.
+    private PatternMatrix(WordIndex index, ByteBuffer[] chunks, int rowsPerChunk) {
+        this.index = index;
+        this.cellSize = cellSize(index.wordLength());
+        this.chunks = chunks;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+
+    // Behavior:
+    // - Builds the full matrix for the given words in memory, filling the rows in parallel.
+    // Parameters:
+    // - index: the dictionary words of the chosen length
+    // Returns:
+    // - PatternMatrix: the matrix of patterns for every guess and secret word in the index
+    // Exceptions:
+    // - if the word length is less than one or greater than MAX_WORD_LENGTH, or the matrix would
+    //   be too large to hold in memory, an IllegalArgumentException is thrown
+    public static PatternMatrix build(WordIndex index) {
+        long size = (long) index.size() * index.size() * cellSize(index.wordLength());
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer[] chunks = {ByteBuffer.allocate((int) size)};
+        PatternMatrix matrix = new PatternMatrix(index, chunks, Math.max(1, index.size()));
+        matrix.fillRows();
+        return matrix;
+    }
+
+    // Behavior:
+    // - Memory-maps the saved matrix for the given dictionary file and index. The matrix is
+    //   saved next to the dictionary (see fileFor). If there is no saved matrix, or it was saved
+    //   for a different version of the dictionary, it is rebuilt in parallel and saved first.
+    // Parameters:
+    // - dictionary: the dictionary file the words were loaded from
+    // - index: the dictionary words of the chosen length
+    // Returns:
+    // - PatternMatrix: the matrix of patterns for every guess and secret word in the index
+    // Exceptions:
+    // - if the word length is less than one or greater than MAX_WORD_LENGTH, an
+    //   IllegalArgumentException is thrown
+    // - if the matrix file cannot be read or written, an IOException is thrown
+    public static PatternMatrix load(File dictionary, WordIndex index) throws IOException {
+        int wordLength = index.wordLength();
+        int wordCount = index.size();
+        int cellSize = cellSize(wordLength);
+        File matrixFile = fileFor(dictionary, wordLength);
+        long fingerprint = index.fingerprint();
+        long rowSize = (long) wordCount * cellSize;
+        long fileSize = HEADER_SIZE + rowSize * wordCount;
+
+        try (RandomAccessFile file = new RandomAccessFile(matrixFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            boolean valid = false;
+            if (channel.size() == fileSize) {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                valid = header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getInt() == wordLength && header.getInt() == wordCount
+                    && header.getLong() == dictionary.length()
+                    && header.getLong() == dictionary.lastModified()
+                    && header.getLong() == fingerprint;
+            }
+
+            if (!valid) {
+                // Clears the old header first so a half-written matrix is never seen as valid
+                channel.truncate(0);
+                file.setLength(fileSize);
+            }
+            int rowsPerChunk = (int) Math.max(1, Math.min(wordCount, Integer.MAX_VALUE / Math.max(1, rowSize)));
+            int chunkCount = (wordCount + rowsPerChunk - 1) / rowsPerChunk;
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+            FileChannel.MapMode mode = valid ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            for (int i = 0; i < chunkCount; i++) {
+                int rows = Math.min(rowsPerChunk, wordCount - i * rowsPerChunk);
+                chunks[i] = channel.map(mode, HEADER_SIZE + i * rowsPerChunk * rowSize, rows * rowSize);
+            }
+            PatternMatrix matrix = new PatternMatrix(index, chunks, rowsPerChunk);
+
+            if (!valid) {
+                matrix.fillRows();
+                for (ByteBuffer chunk : chunks) {
+                    ((MappedByteBuffer) chunk).force();
+                }
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(wordLength).putInt(wordCount);
+                header.putLong(dictionary.length()).putLong(dictionary.lastModified());
+                header.putLong(fingerprint);
+                header.force();
+            }
+            return matrix;
+        }
+    }
+
+    // Returns the file that the matrix for the given dictionary file and word length is saved in.
+    public static File fileFor(File dictionary, int wordLength) {
+        return new File(dictionary.getPath() + "." + wordLength + ".patterns");
+    }
+
+    // Returns the words this matrix was built for.
+    public WordIndex index() {
+        return index;
+    }
+
+    // Returns the length of the words this matrix was built for.
+    public int wordLength() {
+        return index.wordLength();
+    }
+
+    // Returns the packed pattern that the word at guessIndex gets when the word at answerIndex
+    // is the secret word.
+    public int pattern(int guessIndex, int answerIndex) {
+        ByteBuffer chunk = chunks[guessIndex / rowsPerChunk];
+        int offset = ((guessIndex % rowsPerChunk) * index.size() + answerIndex) * cellSize;
+        if (cellSize == 1) {
+            return chunk.get(offset) & 0xff;
+        }
+        return chunk.getShort(offset) & 0xffff;
+    }
+
+    // Fills in every row of this matrix, with the rows split across the common pool.
+    private void fillRows() {
+        int wordCount = index.size();
+        IntStream.range(0, wordCount).parallel().forEach(guessIndex -> {
+            ByteBuffer chunk = chunks[guessIndex / rowsPerChunk];
+            int offset = (guessIndex % rowsPerChunk) * wordCount * cellSize;
+            int[] letterCounts = new int[26];
+            String guess = index.word(guessIndex);
+            for (int answerIndex = 0; answerIndex < wordCount; answerIndex++) {
+                int code = index.patternCode(answerIndex, guess, letterCounts);
+                if (cellSize == 1) {
+                    chunk.put(offset + answerIndex, (byte) code);
+                } else {
+                    chunk.putShort(offset + answerIndex * 2, (short) code);
+                }
+            }
+        });
+    }
+
+    // Returns the number of bytes needed to store one pattern of a word of the given length.
+    private static int cellSize(int wordLength) {
+        if (wordLength < 1 || wordLength > MAX_WORD_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        if (Absurdle.powerOfThree(wordLength) <= 256) {
+            return 1;
+        }
+        return 2;
+    }
+}
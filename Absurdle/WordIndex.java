@@ -0,0 +1,148 @@
+// This class represents an immutable, sorted list of dictionary words that all have the same
+// length. The letters of every word are packed one after another into a single char array, so
+// word i is found at positions i * wordLength up to (i + 1) * wordLength. A word is referred
+// to by its index, which lets a set of words be stored as a bitset (see CandidateSet).
+
+import java.util.*;
+import java.nio.CharBuffer;
+
+public class WordIndex {
+    private final char[] letters;
+    private final int size;
+    private final int wordLength;
+
+    // A read-only view of the letters for Absurdle.patternCode. Its position never moves, so
+    // every thread can read through it at once.
+    private final CharBuffer view;
+
+    // The bits of the set of every word, shared by every game since bits are never changed
+    private final long[] allBits;
+
+    // Constructs an index over the given packed letters, which must already hold size sorted
+    // words with no duplicates.
+    private WordIndex(char[] letters, int size, int wordLength) {
+        this.letters = letters;
+        this.size = size;
+        this.wordLength = wordLength;
+        this.view = CharBuffer.wrap(letters).asReadOnlyBuffer();
+        this.allBits = CandidateSet.all(size).bits();
+    }
+
+    // Behavior:
+    // - Builds an index of the words that are the given length, sorted and without duplicates.
+    // Parameters:
+    // - words: the words from a dictionary, in any order
+    // - wordLength: the length of the words to keep
+    // Returns:
+    // - WordIndex: the sorted words of the given length
+    // Exceptions:
+    // - if the word length is less than one, an IllegalArgumentException is thrown
+    public static WordIndex of(Collection<String> words, int wordLength) {
+        if (wordLength < 1) {
+            throw new IllegalArgumentException();
+        }
+        List<String> kept = new ArrayList<>();
+        for (String word : words) {
+            if (word.length() == wordLength) {
+                kept.add(word);
+            }
+        }
+        Collections.sort(kept);
+
+        char[] letters = new char[kept.size() * wordLength];
+        int size = 0;
+        for (int i = 0; i < kept.size(); i++) {
+            if (i == 0 || !kept.get(i).equals(kept.get(i - 1))) {
+                kept.get(i).getChars(0, wordLength, letters, size * wordLength);
+                size++;
+            }
+        }
+        return new WordIndex(Arrays.copyOf(letters, size * wordLength), size, wordLength);
+    }
+
+    // Returns an index over the given packed letters, which must already hold the given number
+    // of words of the given length in sorted order with no duplicates. The array is used as is,
+    // so it must not be changed afterwards.
+    public static WordIndex ofSortedLetters(char[] letters, int size, int wordLength) {
+        if (wordLength < 1 || letters.length != size * wordLength) {
+            throw new IllegalArgumentException();
+        }
+        return new WordIndex(letters, size, wordLength);
+    }
+
+    // Returns the number of words in this index.
+    public int size() {
+        return size;
+    }
+
+    // Returns the length of every word in this index.
+    public int wordLength() {
+        return wordLength;
+    }
+
+    // Returns the word at the given index.
+    public String word(int index) {
+        return new String(letters, index * wordLength, wordLength);
+    }
+
+    // Returns a candidate set holding every word in this index.
+    public CandidateSet all() {
+        return new CandidateSet(allBits, size);
+    }
+
+    // Returns the index of the given word, or a negative number if it is not in this index.
+    public int indexOf(String word) {
+        return indexOf(word, 0);
+    }
+
+    // Returns the index of the given word, only searching from the given index onward, or a
+    // negative number if it is not found there.
+    public int indexOf(String word, int from) {
+        if (word.length() != wordLength) {
+            return -1;
+        }
+        int low = from;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTo(middle, word);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Returns the packed pattern (see Absurdle.patternCode) the given guess gets when the word
+    // at answerIndex is the secret word. The letter counts must be a cleared 26-slot array, and
+    // are left cleared.
+    public int patternCode(int answerIndex, String guess, int[] letterCounts) {
+        return Absurdle.patternCode(view, answerIndex * wordLength, guess, letterCounts);
+    }
+
+    // Returns a 64-bit hash of every word in this index, used to notice when a dictionary changes.
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < letters.length; i++) {
+            hash = (hash ^ letters[i]) * 0x100000001b3L;
+        }
+        return (hash ^ size) * 0x100000001b3L;
+    }
+
+    // Compares the word at the given index to the given word of the same length, returning a
+    // negative number, zero, or a positive number if it comes before, is equal to, or comes after.
+    private int compareTo(int index, String word) {
+        int start = index * wordLength;
+        for (int i = 0; i < wordLength; i++) {
+            int difference = letters[start + i] - word.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,167 @@
+// JMH benchmarks for the hot paths of Absurdle: finding patterns, recording a guess, pruning
+// the dictionary and loading the dictionary file. Each benchmark of the original code (patternFor,
+// record on a TreeSet, pruneDictionary, loadFile) sits next to its replacement, so every change
+// to the game engine can be measured against the original over the same generated dictionary.
+//
+// The dictionaries are generated with English letter frequencies: dictionarySize words, half of
+// them wordLength letters long and the rest between 3 and 12 letters long.
+//
+// These benchmarks live in their own folder because they need the JMH jars, which the rest of
+// Absurdle does not. To build and run them from the Absurdle folder, with jmh-core,
+// jmh-generator-annprocess and their dependencies (jopt-simple, commons-math3) in $JMH:
+//   javac -encoding UTF-8 -cp "$JMH/*" -d bench/out *.java bench/*.java
+//   java -cp "bench/out:$JMH/*" org.openjdk.jmh.Main AbsurdleBenchmark -prof gc
+// The gc profiler adds gc.alloc.rate.norm (bytes allocated per operation) to every result.
+// A single size can be picked with, for example, -p wordLength=5 -p dictionarySize=20000.
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AbsurdleBenchmark {
+    // Relative frequency of each letter from 'a' to 'z' in English text, in tenths of a percent
+    private static final int[] LETTER_WEIGHTS = {
+        82, 15, 28, 43, 127, 22, 20, 61, 70, 2, 8, 40, 24,
+        67, 75, 19, 1, 60, 63, 91, 28, 10, 24, 2, 20, 1
+    };
+
+    @Param({"4", "5", "6", "7", "8", "9", "10"})
+    public int wordLength;
+
+    @Param({"2000", "20000", "100000", "500000"})
+    public int dictionarySize;
+
+    private File dictionary;
+    private List<String> contents;
+    private Set<String> words;
+    private WordIndex index;
+    private String[] guesses;
+    private int[] letterCounts;
+    private int nextGuess;
+
+    // Generates the dictionary, writes it to a temporary file and loads it every way it can be.
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        contents = new ArrayList<>();
+        for (int i = 0; i < dictionarySize; i++) {
+            int length = wordLength;
+            if (i % 2 == 1) {
+                length = 3 + random.nextInt(10);
+            }
+            contents.add(randomWord(random, length));
+        }
+
+        dictionary = File.createTempFile("absurdle-bench", ".txt");
+        dictionary.deleteOnExit();
+        try (PrintStream output = new PrintStream(dictionary, StandardCharsets.UTF_8)) {
+            for (String word : contents) {
+                output.println(word);
+            }
+        }
+
+        words = Absurdle.pruneDictionary(contents, wordLength);
+        index = WordIndex.of(contents, wordLength);
+        guesses = new String[64];
+        for (int i = 0; i < guesses.length; i++) {
+            guesses[i] = randomWord(random, wordLength);
+        }
+        letterCounts = new int[26];
+    }
+
+    // Returns the next guess, cycling through a fixed list so every benchmark sees the same ones.
+    private String nextGuess() {
+        nextGuess = (nextGuess + 1) % guesses.length;
+        return guesses[nextGuess];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void patternForStrings(Blackhole blackhole) {
+        String guess = nextGuess();
+        for (int i = 0; i < 1000; i++) {
+            blackhole.consume(Absurdle.patternFor(contents.get(2 * (i % (dictionarySize / 2))), guess));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void patternCodePacked(Blackhole blackhole) {
+        String guess = nextGuess();
+        for (int i = 0; i < 1000; i++) {
+            blackhole.consume(
+                Absurdle.patternCode(contents.get(2 * (i % (dictionarySize / 2))), guess, letterCounts));
+        }
+    }
+
+    @Benchmark
+    public String recordTreeSet() {
+        // The copy is part of the measurement, since record empties most of the set
+        return Absurdle.record(nextGuess(), new TreeSet<>(words), wordLength);
+    }
+
+    @Benchmark
+    public String recordTreeSetParallel() {
+        return Absurdle.record(nextGuess(), new TreeSet<>(words), wordLength, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public String recordBitset() {
+        return Absurdle.record(nextGuess(), index, index.all());
+    }
+
+    @Benchmark
+    public Map<Integer, CandidateSet> partitionBitset() {
+        return Absurdle.partition(nextGuess(), index, index.all());
+    }
+
+    @Benchmark
+    public Set<String> pruneDictionary() {
+        return Absurdle.pruneDictionary(contents, wordLength);
+    }
+
+    @Benchmark
+    public WordIndex wordIndexOf() {
+        return WordIndex.of(contents, wordLength);
+    }
+
+    @Benchmark
+    public List<String> loadFileScanner() throws IOException {
+        try (Scanner scanner = new Scanner(dictionary, StandardCharsets.UTF_8)) {
+            return Absurdle.loadFile(scanner);
+        }
+    }
+
+    @Benchmark
+    public WordIndex loadFileMapped() throws IOException {
+        return DictionaryLoader.load(dictionary, wordLength);
+    }
+
+    // Returns a random word of the given length with English letter frequencies.
+    private static String randomWord(Random random, int length) {
+        int total = 0;
+        for (int weight : LETTER_WEIGHTS) {
+            total += weight;
+        }
+        char[] letters = new char[length];
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(total);
+            int letter = 0;
+            while (pick >= LETTER_WEIGHTS[letter]) {
+                pick -= LETTER_WEIGHTS[letter];
+                letter++;
+            }
+            letters[i] = (char) ('a' + letter);
+        }
+        return new String(letters);
+    }
+}
@@ -0,0 +1,141 @@
+// This class is the base of the adaptive Huffman coders, which change their codes as the
+// characters stream through instead of needing every frequency up front. The encoder and the
+// decoder start the same and make the same change after every character, so the codes never
+// have to be sent. This lets a stream be compressed in one pass, even one with no end such as
+// a socket or a pipe, in a fixed amount of memory.
+//
+// Besides the 256 byte values, the coders have two more characters: EOF, which ends a stream,
+// and FLUSH, which is sent whenever the input has nothing more to read for now. After FLUSH the
+// encoder pads its bits to a whole byte and sends them, so the decoder can write out everything
+// sent so far without waiting for more.
+//
+// FgkHuffman updates its tree after every character, and PeriodicHuffman rebuilds a table-driven
+// HuffmanCode every so often, which is faster but adapts more slowly.
+
+import java.io.*;
+import java.nio.channels.*;
+
+public abstract class AdaptiveHuffman {
+    // The character that ends a stream
+    public static final int EOF = 256;
+
+    // The character sent when the input has nothing more to read for now
+    public static final int FLUSH = 257;
+
+    // The number of characters: the 256 byte values, EOF and FLUSH
+    public static final int ALPHABET_SIZE = 258;
+
+    // The number of bytes read from the input at a time
+    private static final int READ_SIZE = 1 << 16;
+
+    // Compresses standard input to standard output, or decompresses it:
+    //   AdaptiveHuffman compress|decompress [--periodic]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !(args[0].equals("compress") || args[0].equals("decompress"))) {
+            System.out.println("usage: AdaptiveHuffman compress|decompress [--periodic] < input > output");
+            return;
+        }
+        AdaptiveHuffman coder = new FgkHuffman();
+        if (args.length > 1 && args[1].equals("--periodic")) {
+            coder = new PeriodicHuffman();
+        }
+        if (args[0].equals("compress")) {
+            coder.compress(System.in, Channels.newChannel(System.out));
+        } else {
+            coder.decompress(Channels.newChannel(System.in), System.out);
+        }
+        System.out.flush();
+    }
+
+    // Behavior:
+    // - Writes the bits of the given character and updates the codes for it.
+    // Parameters:
+    // - character: the character to write, from 0 to ALPHABET_SIZE - 1
+    // - output: where the bits are written
+    // Exceptions:
+    // - if the character is out of range, an IllegalArgumentException is thrown
+    // - if the output cannot be written, an IOException is thrown
+    public abstract void encode(int character, BitWriter output) throws IOException;
+
+    // Behavior:
+    // - Reads the bits of one character and updates the codes for it.
+    // Parameters:
+    // - input: where the bits are read from
+    // Returns:
+    // - int: the character, from 0 to ALPHABET_SIZE - 1
+    // Exceptions:
+    // - if the bits run out, or are not a character's code, an IllegalArgumentException is thrown
+    public abstract int decode(BitReader input);
+
+    // Behavior:
+    // - Compresses everything read from the input until it ends, then writes EOF. Whenever the
+    //   input has nothing more to read for now, FLUSH is written and the bits are sent.
+    // Parameters:
+    // - input: the bytes to compress
+    // - output: where the compressed bits are written
+    // Exceptions:
+    // - if the input cannot be read or the output cannot be written, an IOException is thrown
+    public void compress(InputStream input, WritableByteChannel output) throws IOException {
+        BitWriter writer = new BitWriter(output, READ_SIZE);
+        byte[] buffer = new byte[READ_SIZE];
+        int read = input.read(buffer);
+        while (read != -1) {
+            for (int i = 0; i < read; i++) {
+                encode(buffer[i] & 0xff, writer);
+            }
+            if (input.available() == 0) {
+                encode(FLUSH, writer);
+                writer.flush();
+            }
+            read = input.read(buffer);
+        }
+        encode(EOF, writer);
+        writer.flush();
+    }
+
+    // Behavior:
+    // - Decompresses bits written by compress (with the same kind of coder) until EOF. The
+    //   output is flushed at every FLUSH.
+    // Parameters:
+    // - input: the compressed bits
+    // - output: where the original bytes are written
+    // Returns:
+    // - long: the number of bytes written
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    // - if the input ends before EOF, or is corrupt, an IOException is thrown
+    public long decompress(ReadableByteChannel input, OutputStream output) throws IOException {
+        BitReader reader = new BitReader(input);
+        byte[] buffer = new byte[READ_SIZE];
+        int buffered = 0;
+        long written = 0;
+        try {
+            int character = decode(reader);
+            while (character != EOF) {
+                if (character == FLUSH) {
+                    reader.skipToByte();
+                    output.write(buffer, 0, buffered);
+                    output.flush();
+                    written += buffered;
+                    buffered = 0;
+                } else {
+                    buffer[buffered] = (byte) character;
+                    buffered++;
+                    if (buffered == buffer.length) {
+                        output.write(buffer, 0, buffered);
+                        written += buffered;
+                        buffered = 0;
+                    }
+                }
+                character = decode(reader);
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("corrupt or unfinished adaptive Huffman stream", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        output.write(buffer, 0, buffered);
+        output.flush();
+        return written + buffered;
+    }
+}
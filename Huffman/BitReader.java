@@ -0,0 +1,187 @@
+// This class reads bits, first bit first, from a ByteBuffer, a memory-mapped file or any other
+// channel. The next bits are kept at the top of a 64-bit window, which is refilled 8 bytes at a
+// time when it can be, so a decoder can peek at many bits at once, look them up in a table and
+// then consume only the bits it used. Nothing is allocated after the reader is constructed.
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class BitReader {
+    // The most bits that can be peeked or read at once
+    public static final int MAX_PEEK_BITS = 56;
+
+    // The size of the buffer used to read from a channel, in bytes
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    // The most bytes of a file that are mapped at once
+    public static final int MAX_MAPPED_BYTES = 1 << 30;
+
+    private ByteBuffer buffer;
+    private final ReadableByteChannel channel;
+    private final FileChannel file;
+    private long mapPosition;
+    private final long mapEnd;
+    private long window;
+    private int windowBits;
+    private long bitsRead;
+
+    // Constructs a reader of the bytes from the buffer's position to its limit. The buffer's
+    // position is not changed.
+    public BitReader(ByteBuffer buffer) {
+        this(buffer.duplicate().order(ByteOrder.BIG_ENDIAN), null, null, 0, 0);
+    }
+
+    // Constructs a reader of the bytes the channel gives, read DEFAULT_BUFFER_SIZE bytes at a time.
+    public BitReader(ReadableByteChannel channel) {
+        this(ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).limit(0), channel, null, 0, 0);
+    }
+
+    // Constructs a reader of part of a file, which is memory-mapped MAX_MAPPED_BYTES at a time.
+    // Throws an IllegalArgumentException if the part does not fit in the file.
+    public BitReader(FileChannel file, long position, long length) throws IOException {
+        this(ByteBuffer.allocate(0), null, file, position, position + length);
+        if (position < 0 || length < 0 || position + length > file.size()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // Constructs a reader with the given source. Only one of channel and file may be non-null.
+    private BitReader(ByteBuffer buffer, ReadableByteChannel channel, FileChannel file,
+                      long mapPosition, long mapEnd) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.file = file;
+        this.mapPosition = mapPosition;
+        this.mapEnd = mapEnd;
+    }
+
+    // Behavior:
+    // - Returns the next bits without consuming them. If fewer than count bits are left, the
+    //   missing bits are returned as zeros (see available).
+    // Parameters:
+    // - count: the number of bits, from 0 to MAX_PEEK_BITS
+    // Returns:
+    // - long: the bits, first bit highest, in the lowest count bits
+    // Exceptions:
+    // - if the source cannot be read, an UncheckedIOException is thrown
+    public long peek(int count) {
+        if (windowBits < count) {
+            refill(count);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        return window >>> (64 - count);
+    }
+
+    // Returns the window of the next bits without consuming them, first bit highest, after
+    // refilling it with every byte already read from the source that fits. More bytes are only
+    // read from the source (which may wait on a socket or pipe) if fewer than needed bits would
+    // be available otherwise. Bits past available() are zeros.
+    public long peekWindow(int needed) {
+        if (windowBits <= MAX_PEEK_BITS) {
+            refill(needed);
+        }
+        return window;
+    }
+
+    // Consumes the given number of bits, which must have been peeked. Throws an
+    // IllegalStateException if fewer than count bits are available.
+    public void consume(int count) {
+        if (count > windowBits) {
+            throw new IllegalStateException();
+        }
+        if (count == 64) {
+            window = 0;
+        } else {
+            window <<= count;
+        }
+        windowBits -= count;
+        bitsRead += count;
+    }
+
+    // Reads and consumes the next count bits, from 0 to MAX_PEEK_BITS. Throws an
+    // IllegalStateException if fewer than count bits are left.
+    public long read(int count) {
+        long bits = peek(count);
+        consume(count);
+        return bits;
+    }
+
+    // Returns the number of bits that can be consumed right now without reading from the source.
+    public int available() {
+        return windowBits;
+    }
+
+    // Returns true if at least one more bit can be read and false otherwise.
+    public boolean hasNextBit() {
+        if (windowBits == 0) {
+            refill(1);
+        }
+        return windowBits > 0;
+    }
+
+    // Consumes the bits up to the start of the next byte, such as the zeros a BitWriter adds
+    // when it is flushed. Throws an IllegalStateException if those bits are missing.
+    public void skipToByte() {
+        int count = (int) ((8 - bitsRead % 8) % 8);
+        if (windowBits < count) {
+            refill(count);
+        }
+        consume(count);
+    }
+
+    // Returns the number of bits consumed so far.
+    public long bitsRead() {
+        return bitsRead;
+    }
+
+    // Fills the window with as many whole bytes as fit, 8 bytes at once if the buffer has them.
+    // Bytes are only read from the source if the window would have fewer than needed bits.
+    private void refill(int needed) {
+        if (buffer.remaining() >= 8) {
+            int bytes = (64 - windowBits) >>> 3;
+            long next = buffer.getLong(buffer.position());
+            buffer.position(buffer.position() + bytes);
+            window |= next >>> windowBits;
+            windowBits += 8 * bytes;
+            if (windowBits < 64) {
+                // Clears the bits of the byte that was not taken
+                window &= -1L << (64 - windowBits);
+            }
+            return;
+        }
+        while (windowBits <= MAX_PEEK_BITS) {
+            if (!buffer.hasRemaining() && (windowBits >= needed || !nextBuffer())) {
+                return;
+            }
+            window |= (long) (buffer.get() & 0xff) << (56 - windowBits);
+            windowBits += 8;
+        }
+    }
+
+    // Loads more bytes into the buffer from the channel or file. Returns false if there are
+    // no more bytes.
+    private boolean nextBuffer() {
+        try {
+            if (channel != null) {
+                buffer.clear();
+                int read = 0;
+                while (read == 0) {
+                    read = channel.read(buffer);
+                }
+                buffer.flip();
+                return read > 0;
+            } else if (file != null && mapPosition < mapEnd) {
+                long length = Math.min(MAX_MAPPED_BYTES, mapEnd - mapPosition);
+                buffer = file.map(FileChannel.MapMode.READ_ONLY, mapPosition, length);
+                mapPosition += length;
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
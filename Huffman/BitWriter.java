@@ -0,0 +1,112 @@
+// This class writes bits to a channel, first bit first. Bits are collected in a 64-bit
+// accumulator, which is stored 8 bytes at a time into a large buffer, and the buffer is only
+// written to the channel when it is full. This keeps the work per code to a few shifts, so
+// writing is limited by the disk rather than by the CPU.
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class BitWriter implements Closeable {
+    // The default size of the buffer, in bytes
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long accumulator;
+    private int accumulatorBits;
+    private long bitsWritten;
+
+    // Constructs a writer to the given channel with a buffer of DEFAULT_BUFFER_SIZE bytes.
+    public BitWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    // Constructs a writer to the given channel with a buffer of the given size, which must be at
+    // least 8 bytes. Throws an IllegalArgumentException otherwise.
+    public BitWriter(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < 8) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // Behavior:
+    // - Writes the lowest length bits of the given bits, highest of them first.
+    // Parameters:
+    // - bits: the bits to write
+    // - length: the number of bits to write, from 0 to 64
+    // Exceptions:
+    // - if the buffer is full and cannot be written to the channel, an IOException is thrown
+    public void write(long bits, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (length < 64) {
+            bits &= (1L << length) - 1;
+        }
+        int free = 64 - accumulatorBits;
+        if (length < free) {
+            accumulator |= bits << (free - length);
+            accumulatorBits += length;
+        } else {
+            // Fills the accumulator, stores it, and starts the next one with the bits left over
+            accumulator |= bits >>> (length - free);
+            if (buffer.remaining() < 8) {
+                drain();
+            }
+            buffer.putLong(accumulator);
+            accumulatorBits = length - free;
+            if (accumulatorBits == 0) {
+                accumulator = 0;
+            } else {
+                accumulator = bits << (64 - accumulatorBits);
+            }
+        }
+        bitsWritten += length;
+    }
+
+    // Returns the number of bits written so far.
+    public long bitsWritten() {
+        return bitsWritten;
+    }
+
+    // Behavior:
+    // - Writes every bit collected so far to the channel. If the bits do not fill a whole
+    //   number of bytes, the last byte is padded with zeros, so flush should only be called
+    //   once all of the bits have been written.
+    // Exceptions:
+    // - if the channel cannot be written, an IOException is thrown
+    public void flush() throws IOException {
+        int bytes = (accumulatorBits + 7) / 8;
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+        for (int i = 0; i < bytes; i++) {
+            buffer.put((byte) (accumulator >>> (56 - 8 * i)));
+        }
+        accumulator = 0;
+        bitsWritten += (8 - accumulatorBits % 8) % 8;
+        accumulatorBits = 0;
+        drain();
+    }
+
+    // Flushes the bits (see flush) and closes the channel.
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Writes everything in the buffer to the channel and empties the buffer.
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,353 @@
+// This class compresses with order-1 context modelling: each byte is written with a
+// HuffmanCode chosen by the byte before it, so a byte that usually follows another gets a short
+// code after that byte. Keeping a code for each of the 256 previous bytes would make the header
+// as large as the savings on small files, so the previous bytes are grouped into at most
+// maxTables clusters that share a code, and a 256-byte context map says which cluster each
+// previous byte belongs to. The clusters are found with k-means, where the distance from a
+// previous byte to a cluster is the number of bits its following bytes would take with the
+// cluster's code. The first byte is written as if it followed byte 0.
+//
+// A compressed file holds:
+// - the number of codes (1 byte) and the context map (256 bytes)
+// - each code's compact header (see HuffmanCode.saveCompact)
+// - the number of bytes in the original file, as an 8-byte number
+// - the codes of the bytes, first bit first, with the last byte padded with zeros
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class ContextHuffman {
+    // The default most codes that the previous bytes are grouped into
+    public static final int DEFAULT_TABLES = 16;
+
+    // The most rounds of k-means before the clusters are used as they are
+    private static final int MAX_ROUNDS = 20;
+
+    // The number of bits a byte is assumed to take with a code that does not have it yet
+    private static final int MISSING_CODE_BITS = 32;
+
+    private final HuffmanCode[] codes;
+    private final byte[] contextMap;
+
+    // Behavior:
+    // - Constructs codes for the given counts of each byte after each previous byte, grouping the
+    //   previous bytes into at most maxTables clusters (see the top of this class).
+    // Parameters:
+    // - counts: counts[previous][next] is the number of times next follows previous
+    // - maxTables: the most codes, from 1 to 256
+    // Exceptions:
+    // - if counts is not 256 by 256, or maxTables is out of range, an IllegalArgumentException
+    //   is thrown
+    public ContextHuffman(long[][] counts, int maxTables) {
+        if (counts.length != 256 || maxTables < 1 || maxTables > 256) {
+            throw new IllegalArgumentException();
+        }
+        long[] contextTotals = new long[256];
+        for (int context = 0; context < 256; context++) {
+            if (counts[context].length != 256) {
+                throw new IllegalArgumentException();
+            }
+            for (long count : counts[context]) {
+                contextTotals[context] += count;
+            }
+        }
+
+        // Starts a cluster at each of the busiest previous bytes, busiest first
+        Integer[] byTotal = new Integer[256];
+        for (int context = 0; context < 256; context++) {
+            byTotal[context] = context;
+        }
+        Arrays.sort(byTotal, (a, b) -> Long.compare(contextTotals[b], contextTotals[a]));
+        int tables = 0;
+        while (tables < maxTables && contextTotals[byTotal[tables]] > 0) {
+            tables++;
+        }
+        tables = Math.max(1, tables);
+        int[] assignment = new int[256];
+        Arrays.fill(assignment, -1);
+        HuffmanCode[] clusterCodes = new HuffmanCode[tables];
+        for (int cluster = 0; cluster < tables; cluster++) {
+            clusterCodes[cluster] = new HuffmanCode(
+                    HuffmanCompressor.scaleFrequencies(counts[byTotal[cluster]]));
+        }
+
+        // Moves each previous byte to the cluster whose code suits it best, then rebuilds each
+        // cluster's code from the counts of its previous bytes, until nothing moves
+        boolean moved = true;
+        for (int round = 0; round < MAX_ROUNDS && moved; round++) {
+            moved = false;
+            for (int context = 0; context < 256; context++) {
+                int best = 0;
+                long bestBits = Long.MAX_VALUE;
+                for (int cluster = 0; cluster < tables; cluster++) {
+                    long bits = bitsWith(counts[context], clusterCodes[cluster]);
+                    if (bits < bestBits) {
+                        best = cluster;
+                        bestBits = bits;
+                    }
+                }
+                if (best != assignment[context]) {
+                    assignment[context] = best;
+                    moved = true;
+                }
+            }
+            clusterCodes = buildClusterCodes(counts, assignment, tables);
+        }
+
+        // Drops clusters that ended up with no previous bytes
+        int[] renumber = new int[tables];
+        Arrays.fill(renumber, -1);
+        List<HuffmanCode> used = new ArrayList<>();
+        contextMap = new byte[256];
+        for (int context = 0; context < 256; context++) {
+            int cluster = assignment[context];
+            if (renumber[cluster] == -1) {
+                renumber[cluster] = used.size();
+                used.add(clusterCodes[cluster]);
+            }
+            contextMap[context] = (byte) renumber[cluster];
+        }
+        codes = used.toArray(new HuffmanCode[0]);
+    }
+
+    // Behavior:
+    // - Constructs the codes from a header written by save. Exactly the bytes of the header are
+    //   read, so the input can continue with other data.
+    // Parameters:
+    // - input: the stream the header is read from
+    // Exceptions:
+    // - if the input ends early or cannot be read, an IOException is thrown
+    // - if the header is not valid, an IllegalArgumentException is thrown
+    public ContextHuffman(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        int tables = data.readUnsignedByte() + 1;
+        contextMap = new byte[256];
+        data.readFully(contextMap);
+        for (byte cluster : contextMap) {
+            if ((cluster & 0xff) >= tables) {
+                throw new IllegalArgumentException();
+            }
+        }
+        codes = new HuffmanCode[tables];
+        for (int cluster = 0; cluster < tables; cluster++) {
+            codes[cluster] = new HuffmanCode(data);
+        }
+    }
+
+    // Compresses or decompresses the file given on the command line:
+    //   ContextHuffman compress|decompress <input> <output> [tables]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[0].equals("compress") || args[0].equals("decompress"))) {
+            System.out.println("usage: ContextHuffman compress|decompress <input> <output> [tables]");
+            return;
+        }
+        long start = System.nanoTime();
+        File input = new File(args[1]);
+        File output = new File(args[2]);
+        if (args[0].equals("compress")) {
+            int tables = DEFAULT_TABLES;
+            if (args.length > 3) {
+                tables = Integer.parseInt(args[3]);
+            }
+            compress(input, output, tables);
+        } else {
+            decompress(input, output);
+        }
+        System.out.printf("%d bytes to %d bytes in %.2f s%n", input.length(), output.length(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    // Returns the number of codes.
+    public int tables() {
+        return codes.length;
+    }
+
+    // Returns the index of the code used for bytes that follow the given previous byte.
+    public int tableFor(int previous) {
+        return contextMap[previous] & 0xff;
+    }
+
+    // Behavior:
+    // - Stores the codes in a header: the number of codes minus one (1 byte), the context map
+    //   (256 bytes) and each code's compact header.
+    // Parameters:
+    // - output: the stream the header is written to
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    public void save(OutputStream output) throws IOException {
+        output.write(codes.length - 1);
+        output.write(contextMap);
+        for (HuffmanCode code : codes) {
+            code.saveCompact(output);
+        }
+    }
+
+    // Behavior:
+    // - Writes the codes of part of an array of bytes.
+    // Parameters:
+    // - data: the bytes to encode
+    // - from: the index of the first byte
+    // - to: the index after the last byte
+    // - previous: the byte before data[from], or 0 at the start of the data
+    // - output: where the codes are written
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    public void encode(byte[] data, int from, int to, int previous, BitWriter output)
+            throws IOException {
+        // Copies the codes into flat arrays indexed by code * 256 + byte
+        long[] bits = new long[codes.length * 256];
+        int[] lengths = new int[codes.length * 256];
+        for (int cluster = 0; cluster < codes.length; cluster++) {
+            for (int value = 0; value < 256; value++) {
+                lengths[cluster * 256 + value] = codes[cluster].codeLength(value);
+                if (lengths[cluster * 256 + value] > 0) {
+                    bits[cluster * 256 + value] = codes[cluster].code(value);
+                }
+            }
+        }
+        int[] clusterStart = new int[256];
+        for (int context = 0; context < 256; context++) {
+            clusterStart[context] = (contextMap[context] & 0xff) * 256;
+        }
+
+        for (int i = from; i < to; i++) {
+            int entry = clusterStart[previous] + (data[i] & 0xff);
+            output.write(bits[entry], lengths[entry]);
+            previous = data[i] & 0xff;
+        }
+    }
+
+    // Behavior:
+    // - Decodes count bytes with their tables.
+    // Parameters:
+    // - input: the bits to decode
+    // - output: where the bytes are stored
+    // - offset: the index in output of the first byte
+    // - count: the number of bytes to decode
+    // - previous: the byte before the first one decoded, or 0 at the start of the data
+    // Exceptions:
+    // - if the bits run out, or are not the start of any byte's code, an
+    //   IllegalArgumentException is thrown
+    public void decode(BitReader input, byte[] output, int offset, int count, int previous) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            previous = codes[contextMap[previous] & 0xff].decode(input);
+            output[i] = (byte) previous;
+        }
+    }
+
+    // Behavior:
+    // - Compresses the input file into the output file (see the top of this class for its format).
+    // Parameters:
+    // - input: the file to compress, which must be smaller than 2 GB
+    // - output: the file the compressed data is written to, which is replaced if it exists
+    // - maxTables: the most codes, from 1 to 256
+    // Returns:
+    // - ContextHuffman: the codes that were used
+    // Exceptions:
+    // - if the input is 2 GB or more, or maxTables is out of range, an IllegalArgumentException
+    //   is thrown
+    // - if either file cannot be read or written, an IOException is thrown
+    public static ContextHuffman compress(File input, File output, int maxTables) throws IOException {
+        byte[] data = Files.readAllBytes(input.toPath());
+        long[][] counts = new long[256][256];
+        int previous = 0;
+        for (byte b : data) {
+            counts[previous][b & 0xff]++;
+            previous = b & 0xff;
+        }
+        if (data.length == 0) {
+            counts[0][0] = 1;
+        }
+        ContextHuffman model = new ContextHuffman(counts, maxTables);
+        try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            model.save(headerBytes);
+            new DataOutputStream(headerBytes).writeLong(data.length);
+            ByteBuffer header = ByteBuffer.wrap(headerBytes.toByteArray());
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            BitWriter writer = new BitWriter(channel);
+            model.encode(data, 0, data.length, 0, writer);
+            writer.flush();
+        }
+        return model;
+    }
+
+    // Behavior:
+    // - Decompresses a file made by compress.
+    // Parameters:
+    // - input: the compressed file
+    // - output: the file the original bytes are written to, which is replaced if it exists
+    // Returns:
+    // - long: the number of bytes written
+    // Exceptions:
+    // - if either file cannot be read or written, or the input is not a compressed file, an
+    //   IOException is thrown
+    public static long decompress(File input, File output) throws IOException {
+        try (FileChannel inputChannel = FileChannel.open(input.toPath());
+             OutputStream outputStream = new FileOutputStream(output)) {
+            InputStream header = Channels.newInputStream(inputChannel);
+            ContextHuffman model;
+            long length;
+            try {
+                model = new ContextHuffman(header);
+                length = new DataInputStream(header).readLong();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("not a context Huffman file: " + input, e);
+            }
+            long position = inputChannel.position();
+            BitReader bits = new BitReader(inputChannel, position, inputChannel.size() - position);
+            byte[] buffer = new byte[HuffmanCode.OUTPUT_BUFFER_SIZE];
+            int previous = 0;
+            try {
+                for (long done = 0; done < length; done += buffer.length) {
+                    int count = (int) Math.min(buffer.length, length - done);
+                    model.decode(bits, buffer, 0, count, previous);
+                    outputStream.write(buffer, 0, count);
+                    previous = buffer[count - 1] & 0xff;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupt context Huffman file: " + input, e);
+            }
+            return length;
+        }
+    }
+
+    // Returns the number of bits the given counts would take with the given code.
+    private static long bitsWith(long[] counts, HuffmanCode code) {
+        long bits = 0;
+        for (int value = 0; value < 256; value++) {
+            if (counts[value] > 0) {
+                int length = code.codeLength(value);
+                if (length == 0) {
+                    length = MISSING_CODE_BITS;
+                }
+                bits += counts[value] * length;
+            }
+        }
+        return bits;
+    }
+
+    // Returns a code for each cluster built from the counts of the previous bytes in it. A
+    // cluster with no counts gets a code for byte 0 alone.
+    private static HuffmanCode[] buildClusterCodes(long[][] counts, int[] assignment, int tables) {
+        long[][] clusterCounts = new long[tables][256];
+        for (int context = 0; context < 256; context++) {
+            for (int value = 0; value < 256; value++) {
+                clusterCounts[assignment[context]][value] += counts[context][value];
+            }
+        }
+        HuffmanCode[] clusterCodes = new HuffmanCode[tables];
+        for (int cluster = 0; cluster < tables; cluster++) {
+            clusterCodes[cluster] = new HuffmanCode(
+                    HuffmanCompressor.scaleFrequencies(clusterCounts[cluster]));
+        }
+        return clusterCodes;
+    }
+}
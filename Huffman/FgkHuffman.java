@@ -0,0 +1,266 @@
+// This class is an adaptive Huffman coder that uses the FGK algorithm (see AdaptiveHuffman).
+// The tree starts as a single empty leaf, the NYT ("not yet transmitted") leaf. A character
+// that has not been seen is written as the code of the NYT leaf followed by the character in
+// CHARACTER_BITS bits, and the NYT leaf is then split into a new NYT leaf and a leaf for the
+// character. After every character the weights on its path are increased, swapping nodes as
+// needed so the tree stays a Huffman tree of the weights seen so far.
+//
+// The nodes are stored in arrays, with a node's index being its number in the sibling
+// property: nodes are ordered by weight and siblings are next to each other. When the root's
+// weight reaches MAX_WEIGHT, every weight is halved and the tree is rebuilt, which keeps old
+// characters from outweighing new ones forever and keeps every code under 64 bits.
+
+import java.io.*;
+import java.util.*;
+
+public class FgkHuffman extends AdaptiveHuffman {
+    // The number of bits used to write a character that has not been seen before
+    public static final int CHARACTER_BITS = 9;
+
+    // The root weight at which every weight is halved
+    public static final int MAX_WEIGHT = 1 << 16;
+
+    // The most nodes the tree can have: a leaf for every character, the NYT leaf and the
+    // internal nodes joining them
+    private static final int MAX_NODES = 2 * ALPHABET_SIZE + 1;
+
+    // The node that is the root, which always has the highest number
+    private static final int ROOT = MAX_NODES - 1;
+
+    private final int[] parent;
+    private final int[] left;
+    private final int[] right;
+    private final int[] symbol;
+    private final int[] weight;
+    private final int[] leafOf;
+    private int nyt;
+
+    // Constructs a coder whose tree is only the NYT leaf.
+    public FgkHuffman() {
+        parent = new int[MAX_NODES];
+        left = new int[MAX_NODES];
+        right = new int[MAX_NODES];
+        symbol = new int[MAX_NODES];
+        weight = new int[MAX_NODES];
+        leafOf = new int[ALPHABET_SIZE];
+        Arrays.fill(leafOf, -1);
+        nyt = ROOT;
+        parent[ROOT] = -1;
+        left[ROOT] = -1;
+        right[ROOT] = -1;
+        symbol[ROOT] = -1;
+    }
+
+    public void encode(int character, BitWriter output) throws IOException {
+        if (character < 0 || character >= ALPHABET_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        int node = leafOf[character];
+        if (node == -1) {
+            node = nyt;
+        }
+
+        // The code is found from the leaf up, so the bit nearest the root ends up highest.
+        // MAX_WEIGHT keeps the tree less than 64 levels deep.
+        long code = 0;
+        int length = 0;
+        while (node != ROOT) {
+            if (right[parent[node]] == node) {
+                code |= 1L << length;
+            }
+            length++;
+            node = parent[node];
+        }
+        output.write(code, length);
+        if (leafOf[character] == -1) {
+            output.write(character, CHARACTER_BITS);
+        }
+        update(character);
+    }
+
+    public int decode(BitReader input) {
+        int node = ROOT;
+        while (left[node] != -1) {
+            if (!input.hasNextBit()) {
+                throw new IllegalArgumentException();
+            }
+            if (input.read(1) == 1) {
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        int character = symbol[node];
+        if (node == nyt) {
+            character = (int) input.read(CHARACTER_BITS);
+            if (character >= ALPHABET_SIZE) {
+                throw new IllegalArgumentException();
+            }
+        }
+        update(character);
+        return character;
+    }
+
+    // Adds one to the weight of the given character, adding a leaf for it if it is new, and
+    // increases the weights on its path to the root while keeping the sibling property.
+    private void update(int character) {
+        int node = leafOf[character];
+        if (node == -1) {
+            // Splits the NYT leaf into a new NYT leaf (left) and the character's leaf (right)
+            int oldNyt = nyt;
+            int leaf = oldNyt - 1;
+            nyt = oldNyt - 2;
+            setNode(leaf, oldNyt, -1, -1, character, 0);
+            setNode(nyt, oldNyt, -1, -1, -1, 0);
+            left[oldNyt] = nyt;
+            right[oldNyt] = leaf;
+            leafOf[character] = leaf;
+            node = leaf;
+        }
+        while (node != -1) {
+            // Swaps with the highest numbered node of the same weight, unless that is the parent
+            int leader = node;
+            while (leader < ROOT && weight[leader + 1] == weight[node]) {
+                leader++;
+            }
+            if (leader != node && leader != parent[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+            weight[node]++;
+            node = parent[node];
+        }
+        if (weight[ROOT] >= MAX_WEIGHT) {
+            rescale();
+        }
+    }
+
+    // Sets every field of a node.
+    private void setNode(int node, int nodeParent, int nodeLeft, int nodeRight, int nodeSymbol,
+                         int nodeWeight) {
+        parent[node] = nodeParent;
+        left[node] = nodeLeft;
+        right[node] = nodeRight;
+        symbol[node] = nodeSymbol;
+        weight[node] = nodeWeight;
+    }
+
+    // Swaps the subtrees at two nodes, where neither is above the other. The nodes keep their
+    // numbers and parents, and trade everything below them.
+    private void swap(int a, int b) {
+        int temp = left[a];
+        left[a] = left[b];
+        left[b] = temp;
+        temp = right[a];
+        right[a] = right[b];
+        right[b] = temp;
+        temp = symbol[a];
+        symbol[a] = symbol[b];
+        symbol[b] = temp;
+        temp = weight[a];
+        weight[a] = weight[b];
+        weight[b] = temp;
+        adopt(a);
+        adopt(b);
+    }
+
+    // Points the children (or the character, or NYT) of a node that was just swapped back at it.
+    private void adopt(int node) {
+        if (left[node] != -1) {
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+        } else if (symbol[node] != -1) {
+            leafOf[symbol[node]] = node;
+        } else {
+            nyt = node;
+        }
+    }
+
+    // Halves every weight (keeping seen characters at least 1) and rebuilds the tree from the
+    // new weights. The two lightest nodes are joined over and over, and nodes are numbered in
+    // the order they are joined, which gives the sibling property. Ties go to leaves, then to
+    // lower characters, so the encoder and the decoder build the same tree.
+    private void rescale() {
+        int leaves = 1;
+        for (int character = 0; character < ALPHABET_SIZE; character++) {
+            if (leafOf[character] != -1) {
+                leaves++;
+            }
+        }
+
+        // The NYT leaf (weight 0) sorts first, then the characters by weight and character
+        long[] sorted = new long[leaves];
+        sorted[0] = ALPHABET_SIZE;
+        int count = 1;
+        for (int character = 0; character < ALPHABET_SIZE; character++) {
+            if (leafOf[character] != -1) {
+                long halved = (weight[leafOf[character]] + 1) / 2;
+                sorted[count] = (halved << 32) | character;
+                count++;
+            }
+        }
+        Arrays.sort(sorted, 1, leaves);
+
+        // Temporary nodes: the leaves first, then each joined node in the order it is made
+        int total = 2 * leaves - 1;
+        int[] tempWeight = new int[total];
+        int[] tempLeft = new int[total];
+        int[] tempRight = new int[total];
+        for (int i = 0; i < leaves; i++) {
+            tempWeight[i] = (int) (sorted[i] >>> 32);
+            tempLeft[i] = -1;
+        }
+        int[] order = new int[total];
+        int ordered = 0;
+        int nextLeaf = 0;
+        int nextJoined = leaves;
+        int[] pair = new int[2];
+        for (int made = leaves; made < total; made++) {
+            for (int k = 0; k < 2; k++) {
+                if (nextJoined < made
+                        && (nextLeaf >= leaves || tempWeight[nextJoined] < tempWeight[nextLeaf])) {
+                    pair[k] = nextJoined;
+                    nextJoined++;
+                } else {
+                    pair[k] = nextLeaf;
+                    nextLeaf++;
+                }
+                order[ordered] = pair[k];
+                ordered++;
+            }
+            tempWeight[made] = tempWeight[pair[0]] + tempWeight[pair[1]];
+            tempLeft[made] = pair[0];
+            tempRight[made] = pair[1];
+        }
+        order[ordered] = total - 1;
+
+        // Node numbers follow the order, ending at the root
+        int[] number = new int[total];
+        for (int i = 0; i < total; i++) {
+            number[order[i]] = MAX_NODES - total + i;
+        }
+        parent[ROOT] = -1;
+        for (int temp = 0; temp < total; temp++) {
+            int node = number[temp];
+            weight[node] = tempWeight[temp];
+            if (tempLeft[temp] == -1) {
+                left[node] = -1;
+                right[node] = -1;
+                int character = (int) sorted[temp];
+                if (character == ALPHABET_SIZE) {
+                    symbol[node] = -1;
+                    nyt = node;
+                } else {
+                    symbol[node] = character;
+                    leafOf[character] = node;
+                }
+            } else {
+                left[node] = number[tempLeft[temp]];
+                right[node] = number[tempRight[temp]];
+                symbol[node] = -1;
+                parent[left[node]] = node;
+                parent[right[node]] = node;
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+// This class reads and writes Huffman compressed files made of blocks. Each block holds a
+// fixed number of bytes of the original file (BLOCK_SIZE, except for the last block) and its
+// bits start on a new byte, so every block can be decoded on its own. An index of where each
+// block starts lets blocks be compressed and decoded by many threads at once, and lets any
+// range of the original file be read by decoding only the blocks it covers.
+//
+// A block file holds:
+// - MAGIC (4 bytes), VERSION (1 byte) and the flags (1 byte, SHARED_TREE or 0)
+// - the block size (4 bytes), the number of bytes in the original file (8 bytes) and the
+//   number of blocks (4 bytes)
+// - with SHARED_TREE, the compact header of the tree every block uses (see HuffmanCode.saveCompact)
+// - the index: where each block starts in the file, plus where the last block ends (8 bytes each)
+// - the blocks, each being its own tree's compact header (without SHARED_TREE) followed by
+//   the codes of its bytes, with the last byte padded with zeros
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class HuffmanBlockFile implements Closeable {
+    // The first 4 bytes of every block file ("HUFB")
+    public static final int MAGIC = 0x48554642;
+
+    // The version of the format written by this class
+    public static final int VERSION = 1;
+
+    // The flag for files where every block uses the same tree
+    public static final int SHARED_TREE = 1;
+
+    // The default number of original bytes in each block
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    // The number of bytes before the shared tree or the index
+    private static final int HEADER_SIZE = 22;
+
+    // The size of the buffer each block's BitWriter collects bytes in
+    private static final int BLOCK_BUFFER_SIZE = 1 << 16;
+
+    // The most blocks compressed or decoded ahead of the one being written out
+    private static final int MAX_WINDOW = 1024;
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final long length;
+    private final HuffmanCode sharedCode;
+    private final long[] offsets;
+
+    // Opens the block file at the given path for reading. Throws an IOException if the file
+    // cannot be read or is not a block file.
+    public HuffmanBlockFile(File file) throws IOException {
+        channel = FileChannel.open(file.toPath());
+        try {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.get() != VERSION) {
+                throw new IOException("not a Huffman block file: " + file);
+            }
+            int flags = header.get();
+            blockSize = header.getInt();
+            length = header.getLong();
+            int blockCount = header.getInt();
+            if (blockSize < 1 || length < 0 || blockCount != (length + blockSize - 1) / blockSize) {
+                throw new IOException("corrupt Huffman block file: " + file);
+            }
+
+            long position = HEADER_SIZE;
+            if ((flags & SHARED_TREE) != 0) {
+                // The compact header is 2 bytes of size followed by one byte per Ascii Value
+                int alphabetSize = read(position, 2).getShort() & 0xffff;
+                ByteBuffer tree = read(position, 2 + alphabetSize);
+                sharedCode = new HuffmanCode(new ByteArrayInputStream(tree.array()));
+                position += 2 + alphabetSize;
+            } else {
+                sharedCode = null;
+            }
+            offsets = new long[blockCount + 1];
+            read(position, 8 * offsets.length).asLongBuffer().get(offsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Compresses the file given on the command line into a block file, or decompresses a
+    // block file back into the original file:
+    //   HuffmanBlockFile compress <input> <output> [--block-trees] [threads]
+    //   HuffmanBlockFile decompress <input> <output> [threads]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("usage: HuffmanBlockFile compress <input> <output> [--block-trees] [threads]");
+            System.out.println("       HuffmanBlockFile decompress <input> <output> [threads]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3 && !args[args.length - 1].startsWith("--")) {
+            threads = Integer.parseInt(args[args.length - 1]);
+        }
+        File input = new File(args[1]);
+        File output = new File(args[2]);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            if (args[0].equals("compress")) {
+                boolean sharedTree = !Arrays.asList(args).contains("--block-trees");
+                compress(input, output, BLOCK_SIZE, sharedTree, pool);
+            } else {
+                try (HuffmanBlockFile file = new HuffmanBlockFile(input);
+                     OutputStream stream = new FileOutputStream(output)) {
+                    file.translate(stream, pool);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d bytes to %d bytes in %.2f s%n", input.length(), output.length(), seconds);
+    }
+
+    // Behavior:
+    // - Compresses the input file into a block file (see the top of this class for its format).
+    //   Blocks are compressed by the pool and written in order as they finish, with at most a few
+    //   blocks per thread waiting to be written at once.
+    // Parameters:
+    // - input: the file to compress
+    // - output: the file the block file is written to, which is replaced if it exists
+    // - blockSize: the number of original bytes in each block
+    // - sharedTree: true if every block should use one tree built from the whole file, and false
+    //   if every block should carry its own tree built from its own bytes
+    // - pool: the threads that count and compress the blocks
+    // Exceptions:
+    // - if the block size is less than one, an IllegalArgumentException is thrown
+    // - if either file cannot be read or written, an IOException is thrown
+    // - if the thread is interrupted while waiting for a block, an InterruptedException is thrown
+    public static void compress(File input, File output, int blockSize, boolean sharedTree,
+                                ExecutorService pool) throws IOException, InterruptedException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel inputChannel = FileChannel.open(input.toPath());
+             FileChannel outputChannel = FileChannel.open(output.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long length = inputChannel.size();
+            long blockCount = (length + blockSize - 1) / blockSize;
+            if (blockCount > Integer.MAX_VALUE - 1) {
+                throw new IllegalArgumentException();
+            }
+
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(MAGIC);
+            header.writeByte(VERSION);
+            header.writeByte(sharedTree ? SHARED_TREE : 0);
+            header.writeInt(blockSize);
+            header.writeLong(length);
+            header.writeInt((int) blockCount);
+            HuffmanCode code = null;
+            if (sharedTree) {
+                long[] counts = HuffmanCompressor.countFrequencies(inputChannel, threadsOf(pool));
+                code = new HuffmanCode(HuffmanCompressor.scaleFrequencies(counts));
+                code.saveCompact(header);
+            }
+            write(outputChannel, ByteBuffer.wrap(headerBytes.toByteArray()), 0);
+
+            // The index is written last, once every block's size is known
+            long[] offsets = new long[(int) blockCount + 1];
+            long position = headerBytes.size() + 8 * offsets.length;
+            int window = windowOf(pool);
+            Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            int nextBlock = 0;
+            for (int block = 0; block < blockCount; block++) {
+                while (nextBlock < blockCount && pending.size() < window) {
+                    pending.add(pool.submit(compressBlock(inputChannel,
+                            (long) nextBlock * blockSize, blockSize, code)));
+                    nextBlock++;
+                }
+                ByteBuffer compressed = get(pending.remove());
+                offsets[block] = position;
+                position += compressed.remaining();
+                write(outputChannel, compressed, offsets[block]);
+            }
+            offsets[offsets.length - 1] = position;
+
+            ByteBuffer index = ByteBuffer.allocate(8 * offsets.length);
+            index.asLongBuffer().put(offsets);
+            write(outputChannel, index, headerBytes.size());
+        }
+    }
+
+    // Returns a task that compresses one block of the input, using the given code or, if it is
+    // null, a code built from the block's own bytes, which is then saved before its bits.
+    private static Callable<ByteBuffer> compressBlock(FileChannel input, long position,
+                                                      int blockSize, HuffmanCode code) {
+        return () -> {
+            long blockLength = Math.min(blockSize, input.size() - position);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (blockLength / 2) + 300);
+            HuffmanCode blockCode = code;
+            if (blockCode == null) {
+                long[] counts = new long[256];
+                ByteBuffer mapped = input.map(FileChannel.MapMode.READ_ONLY, position, blockLength);
+                while (mapped.hasRemaining()) {
+                    counts[mapped.get() & 0xff]++;
+                }
+                blockCode = new HuffmanCode(HuffmanCompressor.scaleFrequencies(counts));
+                blockCode.saveCompact(bytes);
+            }
+            BitWriter writer = new BitWriter(Channels.newChannel(bytes), BLOCK_BUFFER_SIZE);
+            HuffmanCompressor.encode(input, position, blockLength, blockCode, writer);
+            writer.flush();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        };
+    }
+
+    // Returns the number of bytes in the original file.
+    public long length() {
+        return length;
+    }
+
+    // Returns the number of blocks in the file.
+    public int blockCount() {
+        return offsets.length - 1;
+    }
+
+    // Behavior:
+    // - Decodes one block of the file.
+    // Parameters:
+    // - block: the index of the block, from 0 to blockCount() - 1
+    // Returns:
+    // - byte[]: the original bytes of the block
+    // Exceptions:
+    // - if the block does not exist, an IndexOutOfBoundsException is thrown
+    // - if the file cannot be read, or the block is corrupt, an IOException is thrown
+    public byte[] readBlock(int block) throws IOException {
+        if (block < 0 || block >= blockCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer compressed = read(offsets[block], (int) (offsets[block + 1] - offsets[block]));
+        HuffmanCode code = sharedCode;
+        if (code == null) {
+            code = new HuffmanCode(new ByteArrayInputStream(compressed.array()));
+            compressed.position(2 + code.alphabetSize());
+        }
+        byte[] bytes = new byte[(int) Math.min(blockSize, length - (long) block * blockSize)];
+        try {
+            code.decode(compressed, bytes, 0, bytes.length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupt block " + block, e);
+        }
+        return bytes;
+    }
+
+    // Behavior:
+    // - Reads a range of the original file, decoding only the blocks that the range covers.
+    // Parameters:
+    // - position: the first byte of the original file to read
+    // - output: where the bytes are stored
+    // - offset: the index in output of the first byte
+    // - count: the number of bytes to read
+    // Returns:
+    // - int: the number of bytes read, which is less than count only at the end of the file
+    // Exceptions:
+    // - if the position is negative or the output is too small, an IndexOutOfBoundsException
+    //   is thrown
+    // - if the file cannot be read, or a block is corrupt, an IOException is thrown
+    public int read(long position, byte[] output, int offset, int count) throws IOException {
+        if (position < 0 || offset < 0 || count < 0 || offset + count > output.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int read = (int) Math.max(0, Math.min(count, length - position));
+        int done = 0;
+        while (done < read) {
+            long next = position + done;
+            int block = (int) (next / blockSize);
+            int start = (int) (next - (long) block * blockSize);
+            byte[] bytes = readBlock(block);
+            int copied = Math.min(read - done, bytes.length - start);
+            System.arraycopy(bytes, start, output, offset + done, copied);
+            done += copied;
+        }
+        return read;
+    }
+
+    // Behavior:
+    // - Decodes the whole file to the output. Blocks are decoded by the pool and written in
+    //   order as they finish, with at most a few blocks per thread waiting to be written at once.
+    // Parameters:
+    // - output: where the original bytes are written
+    // - pool: the threads that decode the blocks
+    // Exceptions:
+    // - if the file cannot be read, a block is corrupt, or the output cannot be written, an
+    //   IOException is thrown
+    // - if the thread is interrupted while waiting for a block, an InterruptedException is thrown
+    public void translate(OutputStream output, ExecutorService pool)
+            throws IOException, InterruptedException {
+        int window = windowOf(pool);
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        int nextBlock = 0;
+        for (int block = 0; block < blockCount(); block++) {
+            while (nextBlock < blockCount() && pending.size() < window) {
+                int decodedBlock = nextBlock;
+                pending.add(pool.submit(() -> readBlock(decodedBlock)));
+                nextBlock++;
+            }
+            output.write(get(pending.remove()));
+        }
+        output.flush();
+    }
+
+    // Closes the file.
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads the given number of bytes starting at the given position of this file. Throws an
+    // IOException if the file ends first.
+    private ByteBuffer read(long position, int count) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(count);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException("unexpected end of Huffman block file");
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    // Writes all of the given bytes to the channel starting at the given position.
+    private static void write(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    // Returns the number of threads the pool runs tasks on, or the number of processors if
+    // that is not known. Pools that can grow without a limit (such as a cached thread pool)
+    // report a huge maximum, so the count is never more than the number of processors.
+    private static int threadsOf(ExecutorService pool) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (pool instanceof ThreadPoolExecutor) {
+            return Math.max(1, Math.min(processors, ((ThreadPoolExecutor) pool).getMaximumPoolSize()));
+        } else if (pool instanceof ForkJoinPool) {
+            return Math.max(1, Math.min(processors, ((ForkJoinPool) pool).getParallelism()));
+        }
+        return processors;
+    }
+
+    // Returns the most blocks that are worked on at once with the given pool: enough to keep
+    // every thread busy while the oldest block is written out.
+    private static int windowOf(ExecutorService pool) {
+        return (int) Math.min(MAX_WINDOW, 4L * threadsOf(pool));
+    }
+
+    // Waits for the given task and returns its result, rethrowing an IOException it threw.
+    private static <T> T get(Future<T> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
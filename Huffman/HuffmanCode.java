@@ -1,148 +1,749 @@
 import java.util.*;
 import java.io.*;
+import java.nio.*;
 
 // This class represents a tree of Huffman nodes with its leaves consisting of a character.
 
 public class HuffmanCode {
+    // The number of bits looked up at once in the primary decoding table
+    public static final int TABLE_BITS = 10;
 
-    private HuffmanNode overallRoot;
+    // The most extra bits a secondary decoding table can look up for codes longer than TABLE_BITS
+    public static final int MAX_SUBTABLE_BITS = 14;
+
+    // The most bits in any code built from frequencies, unless another limit is given
+    public static final int MAX_CODE_LENGTH = 15;
+
+    // The number of decoded bytes collected before they are written to the output
+    public static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    // Decoding table entries with this flag point to a secondary table instead of a character
+    private static final int SUBTABLE_FLAG = 0x80;
+
+    // The tree is stored in arrays indexed by node, with the root at node 0. left and right hold
+    // the children of each node (-1 for none) and asciiValues holds the Ascii Value of each leaf
+    // (-1 for nodes that are not leaves). Ascii Values can go past 255 for larger alphabets.
+    private int[] left;
+    private int[] right;
+    private int[] asciiValues;
+    private int nodeCount;
+
+    // The decoding table built from the tree, or null if it has not been built yet
+    private volatile int[] decodeTable;
+
+    // The length and bits of the code of each Ascii Value, where a length of 0 means the
+    // character is not in the tree
+    private int[] codeLengths;
+    private long[] codes;
+
+    // Whether the codes are the canonical codes for their lengths (see useCanonicalCodes)
+    private boolean canonical;
 
     // Constructs a HuffmanCode tree using a list of frequencies inputted by the user where  
     // the index represents the Ascii Value and the value at that index reprents the frequency
-    // of the character associated with that Ascii Value.
+    // of the character associated with that Ascii Value. No code is longer than
+    // MAX_CODE_LENGTH bits (see the constructor below), unless there are more than
+    // 2^MAX_CODE_LENGTH characters, in which case the limit is the fewest bits that can give
+    // every character a code.
     public HuffmanCode(int[] frequencies) {
-        Queue<HuffmanNode> pq = new PriorityQueue<>();
+        this(frequencies, Math.max(MAX_CODE_LENGTH,
+                32 - Integer.numberOfLeadingZeros(usedCharacters(frequencies) - 1)));
+    }
+
+    // Returns the number of characters with a frequency above 0.
+    private static int usedCharacters(int[] frequencies) {
+        int n = 0;
+        for (int frequency : frequencies) {
+            if (frequency > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // Behavior:
+    // - Constructs a HuffmanCode tree from a list of frequencies (see above) where no code is
+    //   longer than maxLength bits. The code lengths are the shortest possible encoding of the
+    //   frequencies under that limit, found with the package-merge algorithm, and the codes
+    //   themselves are the canonical codes for those lengths (see useCanonicalCodes). Characters
+    //   with equal frequencies are ordered by Ascii Value, so the same frequencies always give the
+    //   same codes. A lone character gets the one-bit code 0.
+    // Parameters:
+    // - frequencies: the frequency of each Ascii Value
+    // - maxLength: the most bits in any code, from 1 to 63
+    // Exceptions:
+    // - if no character has a frequency above 0, if maxLength is out of range, or if there are
+    //   more than 2^maxLength characters, an IllegalArgumentException is thrown
+    public HuffmanCode(int[] frequencies, int maxLength) {
+        if (maxLength < 1 || maxLength > 63) {
+            throw new IllegalArgumentException();
+        }
+        useCanonicalCodes(limitedCodeLengths(frequencies, maxLength));
+    }
+
+    // Behavior:
+    // - Finds the code lengths with the package-merge algorithm. The characters, sorted by
+    //   frequency, are the items of every level from maxLength up to 1. Going up a level, the
+    //   items of the level below are paired off in order into packages, each weighing the two
+    //   items together, and the packages are merged in with that level's characters by weight.
+    //   The lightest 2n - 2 items of level 1 (for n characters) are chosen, which chooses the
+    //   items that make up each chosen package on the level below, and so on. Each character's
+    //   code is as long as the number of levels where it was chosen.
+    // Parameters:
+    // - frequencies: the frequency of each Ascii Value
+    // - maxLength: the most bits in any code
+    // Returns:
+    // - int[]: the code length of each Ascii Value, or 0 for characters with no frequency
+    // Exceptions:
+    // - if no character has a frequency above 0, or there are more than 2^maxLength
+    //   characters, an IllegalArgumentException is thrown
+    private static int[] limitedCodeLengths(int[] frequencies, int maxLength) {
+        int n = usedCharacters(frequencies);
+        if (n == 0 || (maxLength < 31 && n > 1 << maxLength)) {
+            throw new IllegalArgumentException();
+        }
+
+        // Sorts the characters by frequency, then by Ascii Value, packed as frequency << 32 + value
+        long[] sorted = new long[n];
+        n = 0;
         for (int i = 0; i < frequencies.length; i++) {
             if (frequencies[i] > 0) {
-                pq.add(new HuffmanNode(frequencies[i], i));
+                sorted[n] = ((long) frequencies[i] << 32) | i;
+                n++;
             }
         }
-        overallRoot = createTree(pq);
-    }
-    
-    // This is a helper method for the HuffmanCode constructor that takes in a list of
-    // frequencies. It creates a tree using a priority queue and continues to return a 
-    // HuffmanNode until the full tree is created.  
-    private HuffmanNode createTree(Queue<HuffmanNode> pq) {
-        if (pq.size() == 1) {
-            return pq.remove();
+        Arrays.sort(sorted);
+        int[] lengths = new int[frequencies.length];
+        if (n == 1) {
+            lengths[(int) sorted[0]] = 1;
+            return lengths;
         }
 
-        HuffmanNode left = pq.remove();
-        HuffmanNode right = pq.remove();
-        HuffmanNode combinedNode = new HuffmanNode(
-            left.frequency + right.frequency, left, right, -1);
+        // Builds each level's merged list from the deepest level up, remembering which of its
+        // items are characters. On ties, characters come before packages.
+        int levels = Math.min(maxLength, n - 1);
+        boolean[][] isCharacter = new boolean[levels][];
+        long[] below = new long[0];
+        int belowSize = 0;
+        for (int level = levels - 1; level >= 0; level--) {
+            int packages = belowSize / 2;
+            long[] merged = new long[n + packages];
+            boolean[] characters = new boolean[n + packages];
+            int character = 0;
+            int pack = 0;
+            for (int k = 0; k < merged.length; k++) {
+                long packageWeight = Long.MAX_VALUE;
+                if (pack < packages) {
+                    packageWeight = below[2 * pack] + below[2 * pack + 1];
+                }
+                if (character < n && (sorted[character] >>> 32) <= packageWeight) {
+                    merged[k] = sorted[character] >>> 32;
+                    characters[k] = true;
+                    character++;
+                } else {
+                    merged[k] = packageWeight;
+                    pack++;
+                }
+            }
+            isCharacter[level] = characters;
+            below = merged;
+            belowSize = merged.length;
+        }
 
-        pq.add(combinedNode);
-        return createTree(pq);
+        // Walks back down, choosing items from the front of each level's list
+        int chosen = 2 * n - 2;
+        for (int level = 0; level < levels && chosen > 0; level++) {
+            int characters = 0;
+            for (int k = 0; k < chosen; k++) {
+                if (isCharacter[level][k]) {
+                    characters++;
+                }
+            }
+            // The chosen characters are always the lightest ones
+            for (int k = 0; k < characters; k++) {
+                lengths[(int) sorted[k]]++;
+            }
+            chosen = 2 * (chosen - characters);
+        }
+        return lengths;
     }
 
     // Constructs a HuffmanCode tree using the input file inputted by the user. 
     // The input file provided by the user represents a pre-order traversal.
     public HuffmanCode(Scanner input) {
+        clearTree();
         while (input.hasNextLine()) {
             int asciiValue = Integer.parseInt(input.nextLine());
             String code = input.nextLine();
-            overallRoot = readTree(input, code, asciiValue, overallRoot);
+            readTree(code, asciiValue);
+        }
+
+        // Keeps the codes from the file, noting whether they happen to be canonical. Codes
+        // longer than 63 bits do not fit in a long, so they can only be decoded with the tree.
+        List<long[]> treeCodes = collectCodes();
+        int alphabetSize = 0;
+        for (long[] code : treeCodes) {
+            alphabetSize = Math.max(alphabetSize, (int) code[0] + 1);
         }
+        codeLengths = new int[alphabetSize];
+        codes = new long[alphabetSize];
+        for (long[] code : treeCodes) {
+            codeLengths[(int) code[0]] = (int) code[2];
+            codes[(int) code[0]] = code[1];
+        }
+        int maxLength = 0;
+        for (int length : codeLengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        canonical = maxLength > 0 && maxLength <= 63
+            && Arrays.equals(codes, canonicalCodes(codeLengths));
+    }
+
+    // Behavior:
+    // - Constructs a HuffmanCode tree from a compact header written by saveCompact. Only the
+    //   length of each character's code is read, and the codes are rebuilt as canonical codes.
+    //   Exactly the bytes of the header are read, so the input can continue with other data.
+    // Parameters:
+    // - input: the stream the header is read from
+    // Exceptions:
+    // - if the input ends early or cannot be read, an IOException is thrown
+    // - if the code lengths in the header cannot form a tree, an IllegalArgumentException is thrown
+    public HuffmanCode(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        int alphabetSize = data.readUnsignedShort();
+        byte[] lengthBytes = new byte[alphabetSize];
+        data.readFully(lengthBytes);
+        int[] lengths = new int[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++) {
+            lengths[i] = lengthBytes[i] & 0xff;
+        }
+        useCanonicalCodes(lengths);
+    }
+
+    // Behavior:
+    // - Replaces this tree with the tree of the canonical codes for the given code lengths. In
+    //   canonical codes, the characters are ordered by code length and then by Ascii Value, and
+    //   each code is the previous code plus one (with zeros added on the end when the length
+    //   grows). Because of this the codes can be rebuilt from their lengths alone.
+    // Parameters:
+    // - lengths: the length of the code of each Ascii Value, or 0 if it has no code
+    // Exceptions:
+    // - if there are no codes, if a length is more than 63, or if the lengths are too short to
+    //   all fit in one tree, an IllegalArgumentException is thrown
+    private void useCanonicalCodes(int[] lengths) {
+        codes = canonicalCodes(lengths);
+        codeLengths = lengths;
+        canonical = true;
+        decodeTable = null;
+        clearTree();
+        for (int asciiValue = 0; asciiValue < lengths.length; asciiValue++) {
+            if (lengths[asciiValue] > 0) {
+                int node = 0;
+                for (int bit = lengths[asciiValue] - 1; bit >= 0; bit--) {
+                    node = child(node, (int) (codes[asciiValue] >>> bit) & 1);
+                }
+                asciiValues[node] = asciiValue;
+            }
+        }
+    }
+
+    // Empties the tree, leaving only the root.
+    private void clearTree() {
+        left = new int[64];
+        right = new int[64];
+        asciiValues = new int[64];
+        nodeCount = 0;
+        newNode();
+    }
+
+    // Adds a node with no children and no Ascii Value to the tree and returns it, making the
+    // arrays larger if they are full.
+    private int newNode() {
+        if (nodeCount == left.length) {
+            left = Arrays.copyOf(left, 2 * nodeCount);
+            right = Arrays.copyOf(right, 2 * nodeCount);
+            asciiValues = Arrays.copyOf(asciiValues, 2 * nodeCount);
+        }
+        left[nodeCount] = -1;
+        right[nodeCount] = -1;
+        asciiValues[nodeCount] = -1;
+        nodeCount++;
+        return nodeCount - 1;
+    }
+
+    // Returns the left child (for bit 0) or right child (for bit 1) of the given node, adding
+    // it first if the node does not have it yet.
+    private int child(int node, int bit) {
+        if (bit == 1) {
+            if (right[node] == -1) {
+                int added = newNode();
+                right[node] = added;
+            }
+            return right[node];
+        } else {
+            if (left[node] == -1) {
+                int added = newNode();
+                left[node] = added;
+            }
+            return left[node];
+        }
+    }
+
+    // Returns the canonical code of each Ascii Value for the given code lengths (see
+    // useCanonicalCodes), or throws an IllegalArgumentException if the lengths are not valid.
+    private static long[] canonicalCodes(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length > 63) {
+                throw new IllegalArgumentException();
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+        if (maxLength == 0) {
+            throw new IllegalArgumentException();
+        }
+        int[] lengthCounts = new int[maxLength + 1];
+        for (int length : lengths) {
+            if (length > 0) {
+                lengthCounts[length]++;
+            }
+        }
+
+        // The first code of each length comes right after the last code of the length before.
+        // At a length of 63, 1L << 63 and a full level's codes reach the sign bit of a long, so
+        // the codes are compared as unsigned numbers.
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            code = (code + lengthCounts[length - 1]) << 1;
+            nextCode[length] = code;
+            if (lengthCounts[length] > 0
+                    && Long.compareUnsigned(code + lengthCounts[length] - 1, 1L << length) >= 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        long[] codes = new long[lengths.length];
+        for (int asciiValue = 0; asciiValue < lengths.length; asciiValue++) {
+            if (lengths[asciiValue] > 0) {
+                codes[asciiValue] = nextCode[lengths[asciiValue]];
+                nextCode[lengths[asciiValue]]++;
+            }
+        }
+        return codes;
     }
 
     // This is a helper method for the HuffmanCode constructor that takes in an input file. 
-    // It creates the tree using the input file, the code representing the path for
-    // the tree we still need to go through, the asciiValue, and the root representing where
-    // we are in the tree. The method continues to return a HuffmanNode until the full tree
-    // is created. The input file provided by the user represents a pre-order traversal.
-    private HuffmanNode readTree(Scanner input, String code, int asciiValue, HuffmanNode root) {
+    // It adds the leaf for the given asciiValue to the tree, following the code one character
+    // at a time from the root. A code with no characters makes the character the whole tree.
+    // The input file provided by the user represents a pre-order traversal.
+    private void readTree(String code, int asciiValue) {
         if (code.length() == 0) {
-            return new HuffmanNode(-1, asciiValue);
+            clearTree();
+            asciiValues[0] = asciiValue;
+            return;
         }
-        if (root == null) {
-            root = new HuffmanNode(-1, -1);
+        int node = 0;
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '1') {
+                node = child(node, 1);
+            } else if (code.charAt(i) == '0') {
+                node = child(node, 0);
+            } else {
+                return;
+            }
         }
-        if (root != null) {
-            if (code.charAt(0) == '1') {
-                root.right = readTree(input, code.substring(1), asciiValue, root.right);
-            } else if (code.charAt(0) == '0') {
-                root.left = readTree(input, code.substring(1), asciiValue, root.left);
-            } 
-        } 
-        return root;
-
+        asciiValues[node] = asciiValue;
     }
 
     // This method stores the current HuffmanCode tree into an output file inputted by the user.
     // The Ascii value of the character will be in one line and the encoding of that character
     // will be in the next line. The output file represents a pre-order traversal.
     public void save(PrintStream output) {
-        save(output, overallRoot, "");
-    }
-
-    // This is a helper method for the save method which takes in the ouput file inputted by the
-    // user, the root representing where in the tree we are, and binary which represents the
-    // encoding so far to get to the character. The output file represents a pre-order traversal.
-    private void save(PrintStream output, HuffmanNode root, String binary) {
-        if (root != null) {
-            if (root.right == null && root.left == null) {
-                output.println(root.asciiValue);
-                output.println(binary);
+        // The nodes still to visit, with how deep they are and the code bit that leads to them.
+        // Right children are added before left ones so the left ones are visited first.
+        int[] stack = new int[nodeCount];
+        int[] depths = new int[nodeCount];
+        byte[] bits = new byte[nodeCount];
+        byte[] path = new byte[nodeCount];
+        int size = 1;
+        while (size > 0) {
+            size--;
+            int node = stack[size];
+            int depth = depths[size];
+            if (depth > 0) {
+                path[depth - 1] = bits[size];
+            }
+            if (left[node] == -1 && right[node] == -1) {
+                if (asciiValues[node] != -1) {
+                    output.println(asciiValues[node]);
+                    output.write(path, 0, depth);
+                    output.println();
+                }
             } else {
-                save(output, root.left, binary + "0");
-                save(output, root.right, binary + "1");
+                if (right[node] != -1) {
+                    stack[size] = right[node];
+                    depths[size] = depth + 1;
+                    bits[size] = '1';
+                    size++;
+                }
+                if (left[node] != -1) {
+                    stack[size] = left[node];
+                    depths[size] = depth + 1;
+                    bits[size] = '0';
+                    size++;
+                }
             }
         }
     }
 
+    // Behavior:
+    // - Stores the current HuffmanCode tree in a compact binary header: the number of Ascii
+    //   Values as a 2-byte number, then the length of each one's code as a single byte (0 if it
+    //   has no code). For 256 characters the header is 258 bytes, and the tree can be rebuilt
+    //   from it (see the InputStream constructor) without reading any codes.
+    // Parameters:
+    // - output: the stream the header is written to
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    // - if this tree's codes are not canonical (which can only happen for a tree read from a
+    //   file made by save), an IllegalStateException is thrown, since the codes could not be
+    //   rebuilt from their lengths
+    public void saveCompact(OutputStream output) throws IOException {
+        if (!canonical || codeLengths.length > 0xffff) {
+            throw new IllegalStateException();
+        }
+        byte[] header = new byte[2 + codeLengths.length];
+        header[0] = (byte) (codeLengths.length >>> 8);
+        header[1] = (byte) codeLengths.length;
+        for (int i = 0; i < codeLengths.length; i++) {
+            header[2 + i] = (byte) codeLengths[i];
+        }
+        output.write(header);
+    }
+
+    // Returns true if this tree's codes are the canonical codes for their lengths (so it can be
+    // saved with saveCompact) and false otherwise.
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    // Returns the number of Ascii Values this tree has room for, which is one more than the
+    // largest Ascii Value with a code.
+    public int alphabetSize() {
+        return codeLengths.length;
+    }
+
+    // Returns the number of bits in the code of the given Ascii Value, or 0 if it has no code.
+    public int codeLength(int asciiValue) {
+        if (asciiValue < 0 || asciiValue >= codeLengths.length) {
+            return 0;
+        }
+        return codeLengths[asciiValue];
+    }
+
+    // Returns the bits of the code of the given Ascii Value, with the first bit of the code as
+    // the highest of its codeLength bits.
+    public long code(int asciiValue) {
+        return codes[asciiValue];
+    }
+
     // This method translates the individual bits from the input inputted by the user and 
     // translates it into the corresponding characters which is then printed in the output file.
+    // Instead of following the tree one bit at a time, up to 56 bits are collected at once and
+    // each character is found with one or two lookups in a decoding table (see buildDecodeTable).
+    // The characters are collected in a buffer and written to the output together.
     public void translate(BitInputStream input, PrintStream output) {
-        HuffmanNode root = overallRoot;
+        int[] table = decodeTable();
+        if (table.length == 0) {
+            translateByTree(input, output);
+            return;
+        }
+        byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+        int buffered = 0;
+        long window = 0;
+        int bits = 0;
+        while (true) {
+            // The next bits are kept at the top of the window, first bit highest
+            while (bits <= 56 && input.hasNextBit()) {
+                window |= (long) input.nextBit() << (63 - bits);
+                bits++;
+            }
+            if (bits == 0) {
+                break;
+            }
+            int entry = table[(int) (window >>> (64 - TABLE_BITS))];
+            int length = entry & 0x7f;
+            if ((entry & SUBTABLE_FLAG) != 0) {
+                int subBits = length;
+                entry = table[(entry >>> 8) + (int) ((window << TABLE_BITS) >>> (64 - subBits))];
+                length = entry & 0x7f;
+                if (length > 0) {
+                    length += TABLE_BITS;
+                }
+            }
+            // Leftover bits that do not finish a character, or bits that are not the start of any
+            // character's code, end the translation
+            if (length == 0 || length > bits) {
+                break;
+            }
+            buffer[buffered] = (byte) (entry >>> 8);
+            buffered++;
+            if (buffered == buffer.length) {
+                output.write(buffer, 0, buffered);
+                buffered = 0;
+            }
+            window <<= length;
+            bits -= length;
+        }
+        output.write(buffer, 0, buffered);
+    }
+
+    // Behavior:
+    // - Decodes a fixed number of characters from the bits of input and writes them to output.
+    //   Unlike translate, the number of characters is given, so padding at the end of the bits
+    //   is never decoded.
+    // Parameters:
+    // - input: the bits to decode
+    // - output: where the characters are written
+    // - count: the number of characters to decode
+    // Exceptions:
+    // - if the output cannot be written, an IOException is thrown
+    // - if the bits run out, or are not the start of any character's code, before count
+    //   characters are decoded, an IllegalArgumentException is thrown
+    public void translate(BitReader input, OutputStream output, long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(OUTPUT_BUFFER_SIZE, Math.max(count, 1))];
+        while (count > 0) {
+            int decoded = (int) Math.min(buffer.length, count);
+            decode(input, buffer, 0, decoded);
+            output.write(buffer, 0, decoded);
+            count -= decoded;
+        }
+    }
+
+    // Decodes count characters from the bits of a buffer, starting at its position, into output
+    // starting at offset (see the BitReader version below). The buffer's position is not changed.
+    public void decode(ByteBuffer input, byte[] output, int offset, int count) {
+        decode(new BitReader(input), output, offset, count);
+    }
+
+    // Behavior:
+    // - Decodes a fixed number of characters from the bits of input, consuming exactly the bits
+    //   of their codes. This is safe to call from many threads at once, as long as each has its
+    //   own input and output.
+    // Parameters:
+    // - input: the bits to decode
+    // - output: where the characters are stored
+    // - offset: the index in output of the first character
+    // - count: the number of characters to decode
+    // Exceptions:
+    // - if the bits run out, or are not the start of any character's code, before count
+    //   characters are decoded, an IllegalArgumentException is thrown
+    public void decode(BitReader input, byte[] output, int offset, int count) {
+        int[] table = decodeTable();
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            output[i] = (byte) decode(input, table);
+        }
+    }
+
+    // Behavior:
+    // - Decodes one character from the bits of input, consuming exactly the bits of its code.
+    //   Bits are only waited for when the bits already read do not finish the code, so a
+    //   character can be decoded as soon as its last bit has arrived.
+    // Parameters:
+    // - input: the bits to decode
+    // Returns:
+    // - int: the Ascii Value of the character
+    // Exceptions:
+    // - if the bits run out, or are not the start of any character's code, an
+    //   IllegalArgumentException is thrown
+    public int decode(BitReader input) {
+        return decode(input, decodeTable());
+    }
+
+    // Decodes one character from the bits of input with the given decoding table (see the
+    // version above). Decoding many characters gets the table once and passes it in here.
+    private int decode(BitReader input, int[] table) {
+        if (table.length == 0) {
+            // The tree is too deep for the table, so it is followed one bit at a time
+            int node = 0;
+            while (left[node] != -1 || right[node] != -1) {
+                if (!input.hasNextBit()) {
+                    throw new IllegalArgumentException();
+                }
+                if (input.read(1) == 1) {
+                    node = right[node];
+                } else {
+                    node = left[node];
+                }
+                if (node == -1) {
+                    throw new IllegalArgumentException();
+                }
+            }
+            return asciiValues[node];
+        }
+        int needed = 1;
+        while (true) {
+            long window = input.peekWindow(needed);
+            int available = input.available();
+            int entry = table[(int) (window >>> (64 - TABLE_BITS))];
+            int length = entry & 0x7f;
+            if ((entry & SUBTABLE_FLAG) != 0) {
+                int subBits = length;
+                entry = table[(entry >>> 8) + (int) ((window << TABLE_BITS) >>> (64 - subBits))];
+                length = entry & 0x7f;
+                if (length > 0) {
+                    length += TABLE_BITS;
+                }
+            }
+            if (length > 0 && length <= available) {
+                input.consume(length);
+                return entry >>> 8;
+            }
+
+            // The missing bits were looked up as zeros, so more bits are needed to be sure
+            if (available < needed || available >= TABLE_BITS + MAX_SUBTABLE_BITS) {
+                throw new IllegalArgumentException();
+            }
+            if (length > 0) {
+                needed = length;
+            } else {
+                needed = available + 1;
+            }
+        }
+    }
+
+    // This is a helper method for translate which follows the tree one bit at a time. It is used
+    // for trees that are too deep for the decoding table.
+    private void translateByTree(BitInputStream input, PrintStream output) {
+        int node = 0;
         while (input.hasNextBit()) {
-            int nextBit = input.nextBit();
-            if (root != null) {
-                if (nextBit == 1) {
-                    root = root.right;
-                } else if (nextBit == 0) {
-                    root = root.left;
-                }
-                if (root.right == null && root.left == null) {
-                    output.write((char)root.asciiValue);
-                    root = overallRoot;
-                }
-            } 
-        }     
-    }
-
-    // This class reprensents a single node in the tree which either represents the frequency 
-    // or the frequency and an asciiValue.
-    private static class HuffmanNode implements Comparable<HuffmanNode> {
-        public HuffmanNode left;
-        public HuffmanNode right;
-        public final int frequency;
-        public final int asciiValue;
-
-        // Constructs a HuffmanNode using the frequency which represents the total frequency 
-        // of the given characters and asciiValue which is associated with a character.
-        public HuffmanNode(int frequency, int asciiValue) {
-            this(frequency, null, null, asciiValue);
-        }
-
-        // Constructs a HuffmanNode using the frequency which represents the total frequency 
-        // of the given characters, asciiValue which is associated with a character, and 
-        // the right and left node (the children) of the node.
-        public HuffmanNode(int frequency, HuffmanNode left, HuffmanNode right, int asciiValue) {
-            this.frequency = frequency;
-            this.left = left;
-            this.right = right;
-            this.asciiValue = asciiValue;
-        }
-
-        // This method allows for the HuffmanNodes with the lower frequencies to be 
-        // prioritized first. It returns a positive number if this frequency is greater 
-        // than other frequency and visa versa. If the frequency of this HuffmanNode and other
-        // Huffman node are the same, 0 is returned.
-        public int compareTo(HuffmanNode other) {
-            return this.frequency - other.frequency;
+            if (input.nextBit() == 1) {
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+            // Bits that are not the start of any character's code end the translation
+            if (node == -1) {
+                return;
+            }
+            if (left[node] == -1 && right[node] == -1) {
+                output.write((char) asciiValues[node]);
+                node = 0;
+            }
+        }
+    }
+
+    // Returns the decoding table, building it the first time it is needed. Only one thread
+    // builds the table, and every thread sees it fully built. Once it is built, getting it
+    // takes no lock, since it is looked up for every character decoded.
+    private int[] decodeTable() {
+        int[] table = decodeTable;
+        if (table == null) {
+            synchronized (this) {
+                if (decodeTable == null) {
+                    decodeTable = buildDecodeTable();
+                }
+                table = decodeTable;
+            }
+        }
+        return table;
+    }
+
+    // This method builds the table used by translate. Entry i of the primary table describes the
+    // code that starts with the TABLE_BITS bits of i: it holds (ascii value << 8) + code length for
+    // codes of at most TABLE_BITS bits. Codes longer than that share a secondary table, stored after
+    // the primary table, for each group of codes with the same first TABLE_BITS bits. Their primary
+    // entry holds (secondary table position << 8) + SUBTABLE_FLAG + the number of extra bits the
+    // secondary table looks up, and each secondary entry holds (ascii value << 8) + the number of
+    // bits past the first TABLE_BITS. Returns an empty table if the tree is too deep for the
+    // secondary tables, has only one character, or has an Ascii Value too large for an entry.
+    private int[] buildDecodeTable() {
+        List<long[]> codes = collectCodes();
+        int[] subBits = new int[1 << TABLE_BITS];
+        for (long[] code : codes) {
+            int length = (int) code[2];
+            if (length == 0 || length > TABLE_BITS + MAX_SUBTABLE_BITS || code[0] >= 1 << 23) {
+                return new int[0];
+            }
+            if (length > TABLE_BITS) {
+                int prefix = (int) (code[1] >>> (length - TABLE_BITS));
+                subBits[prefix] = Math.max(subBits[prefix], length - TABLE_BITS);
+            }
+        }
+
+        int size = 1 << TABLE_BITS;
+        int[] subStart = new int[1 << TABLE_BITS];
+        for (int prefix = 0; prefix < subBits.length; prefix++) {
+            if (subBits[prefix] > 0) {
+                subStart[prefix] = size;
+                size += 1 << subBits[prefix];
+            }
+        }
+        int[] table = new int[size];
+        for (int prefix = 0; prefix < subBits.length; prefix++) {
+            if (subBits[prefix] > 0) {
+                table[prefix] = (subStart[prefix] << 8) | SUBTABLE_FLAG | subBits[prefix];
+            }
+        }
+
+        // Every entry whose first bits are a code is filled with that code's character
+        for (long[] code : codes) {
+            int asciiValue = (int) code[0];
+            long bits = code[1];
+            int length = (int) code[2];
+            if (length <= TABLE_BITS) {
+                int first = (int) (bits << (TABLE_BITS - length));
+                for (int i = 0; i < 1 << (TABLE_BITS - length); i++) {
+                    table[first + i] = (asciiValue << 8) | length;
+                }
+            } else {
+                int prefix = (int) (bits >>> (length - TABLE_BITS));
+                int extra = length - TABLE_BITS;
+                int first = subStart[prefix]
+                    + (int) ((bits & ((1L << extra) - 1)) << (subBits[prefix] - extra));
+                for (int i = 0; i < 1 << (subBits[prefix] - extra); i++) {
+                    table[first + i] = (asciiValue << 8) | extra;
+                }
+            }
+        }
+        return table;
+    }
+
+    // Returns {ascii value, code, code length} for every leaf of the tree, visiting the nodes with
+    // a stack instead of recursion so trees of any depth can be walked. Only the last 64 bits of
+    // a code longer than that are kept.
+    private List<long[]> collectCodes() {
+        List<long[]> codes = new ArrayList<>();
+        int[] stack = new int[nodeCount];
+        long[] stackCodes = new long[nodeCount];
+        int[] stackLengths = new int[nodeCount];
+        int size = 1;
+        while (size > 0) {
+            size--;
+            int node = stack[size];
+            long code = stackCodes[size];
+            int length = stackLengths[size];
+            if (left[node] == -1 && right[node] == -1) {
+                if (asciiValues[node] != -1) {
+                    codes.add(new long[] {asciiValues[node], code, length});
+                }
+            } else {
+                if (right[node] != -1) {
+                    stack[size] = right[node];
+                    stackCodes[size] = (code << 1) | 1;
+                    stackLengths[size] = length + 1;
+                    size++;
+                }
+                if (left[node] != -1) {
+                    stack[size] = left[node];
+                    stackCodes[size] = code << 1;
+                    stackLengths[size] = length + 1;
+                    size++;
+                }
+            }
         }
+        return codes;
     }
     
 }
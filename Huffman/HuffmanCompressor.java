@@ -0,0 +1,267 @@
+// This class compresses a file with a HuffmanCode. The file is memory-mapped and its bytes
+// are counted by several threads at once, each into its own histogram, and the histograms are
+// added together once every thread is done. The HuffmanCode is built from the counts, and every
+// byte of the file is then written as its code through a BitWriter. Compressed files are
+// decompressed by reading their memory-mapped bits through a BitReader.
+//
+// A compressed file holds:
+// - the HuffmanCode's compact header (see HuffmanCode.saveCompact)
+// - the number of bytes in the original file, as an 8-byte number
+// - the codes of the bytes, first bit first, with the last byte padded with zeros
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class HuffmanCompressor {
+    // The number of bytes of the file that are counted as one piece of work, which is also the
+    // most bytes that are mapped at once
+    public static final int CHUNK_SIZE = 1 << 26;
+
+    // The number of bytes copied out of the mapped file at a time
+    private static final int COPY_SIZE = 1 << 16;
+
+    // The most the counts can add up to before they are scaled down for the HuffmanCode, which
+    // keeps every frequency within an int
+    private static final long MAX_TOTAL_FREQUENCY = 1 << 30;
+
+    // Compresses or decompresses the file given on the command line:
+    //   HuffmanCompressor compress <input> <output> [threads]
+    //   HuffmanCompressor decompress <input> <output>
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3 || !(args[0].equals("compress") || args[0].equals("decompress"))) {
+            System.out.println("usage: HuffmanCompressor compress <input> <output> [threads]");
+            System.out.println("       HuffmanCompressor decompress <input> <output>");
+            return;
+        }
+        long start = System.nanoTime();
+        if (args[0].equals("decompress")) {
+            long bytes = decompress(new File(args[1]), new File(args[2]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Decompressed %d bytes in %.2f s (%.1f MB/s)%n",
+                    bytes, seconds, bytes / 1e6 / seconds);
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            threads = Integer.parseInt(args[3]);
+        }
+        long bits = compress(new File(args[1]), new File(args[2]), threads);
+        long inputBytes = new File(args[1]).length();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Compressed %d bytes to %d bytes in %.2f s (%.1f MB/s)%n",
+                inputBytes, (bits + 7) / 8, seconds, inputBytes / 1e6 / seconds);
+    }
+
+    // Behavior:
+    // - Compresses the input file into the output file (see the top of this class for its format).
+    // Parameters:
+    // - input: the file to compress
+    // - output: the file the compressed data is written to, which is replaced if it exists
+    // - threads: the number of threads that count the bytes of the input
+    // Returns:
+    // - long: the number of bits written after the header and byte count
+    // Exceptions:
+    // - if threads is less than one, an IllegalArgumentException is thrown
+    // - if either file cannot be read or written, an IOException is thrown
+    // - if the thread is interrupted while counting, an InterruptedException is thrown
+    public static long compress(File input, File output, int threads)
+            throws IOException, InterruptedException {
+        try (FileChannel inputChannel = FileChannel.open(input.toPath())) {
+            long[] counts = countFrequencies(inputChannel, threads);
+            HuffmanCode code = new HuffmanCode(scaleFrequencies(counts));
+            try (FileChannel outputChannel = FileChannel.open(output.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                code.saveCompact(header);
+                new DataOutputStream(header).writeLong(inputChannel.size());
+                ByteBuffer headerBytes = ByteBuffer.wrap(header.toByteArray());
+                while (headerBytes.hasRemaining()) {
+                    outputChannel.write(headerBytes);
+                }
+
+                BitWriter writer = new BitWriter(outputChannel);
+                encode(inputChannel, 0, inputChannel.size(), code, writer);
+                long bits = writer.bitsWritten();
+                writer.flush();
+                return bits;
+            }
+        }
+    }
+
+    // Behavior:
+    // - Decompresses a file made by compress.
+    // Parameters:
+    // - input: the compressed file
+    // - output: the file the original bytes are written to, which is replaced if it exists
+    // Returns:
+    // - long: the number of bytes written
+    // Exceptions:
+    // - if either file cannot be read or written, or the input is not a compressed file, an
+    //   IOException is thrown
+    public static long decompress(File input, File output) throws IOException {
+        try (FileChannel inputChannel = FileChannel.open(input.toPath());
+             OutputStream outputStream = new FileOutputStream(output)) {
+            InputStream header = Channels.newInputStream(inputChannel);
+            HuffmanCode code;
+            long length;
+            try {
+                code = new HuffmanCode(header);
+                length = new DataInputStream(header).readLong();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("not a compressed file: " + input, e);
+            }
+            long position = inputChannel.position();
+            BitReader bits = new BitReader(inputChannel, position, inputChannel.size() - position);
+            try {
+                code.translate(bits, outputStream, length);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupt compressed file: " + input, e);
+            }
+            return length;
+        }
+    }
+
+    // Behavior:
+    // - Counts how many times each byte value appears in the file. The file is split into
+    //   chunks of CHUNK_SIZE bytes, which the threads take one at a time, each adding to its
+    //   own histogram. The histograms are added together at the end.
+    // Parameters:
+    // - channel: the file to count
+    // - threads: the number of threads to count with
+    // Returns:
+    // - long[]: the number of times each byte value from 0 to 255 appears
+    // Exceptions:
+    // - if threads is less than one, an IllegalArgumentException is thrown
+    // - if the file cannot be read, an IOException is thrown
+    // - if the thread is interrupted while waiting for the counts, an InterruptedException is thrown
+    public static long[] countFrequencies(FileChannel channel, int threads)
+            throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        long fileSize = channel.size();
+        int chunkCount = (int) ((fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        threads = Math.max(1, Math.min(threads, chunkCount));
+        AtomicInteger nextChunk = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> histograms = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                histograms.add(pool.submit(() -> {
+                    long[] histogram = new long[256];
+                    int[] chunkCounts = new int[256];
+                    byte[] bytes = new byte[COPY_SIZE];
+                    int chunk = nextChunk.getAndIncrement();
+                    while (chunk < chunkCount) {
+                        long position = (long) chunk * CHUNK_SIZE;
+                        long length = Math.min(CHUNK_SIZE, fileSize - position);
+                        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                        // A chunk has less than 2^31 bytes, so its counts fit in an int
+                        while (mapped.hasRemaining()) {
+                            int count = Math.min(bytes.length, mapped.remaining());
+                            mapped.get(bytes, 0, count);
+                            for (int j = 0; j < count; j++) {
+                                chunkCounts[bytes[j] & 0xff]++;
+                            }
+                        }
+                        for (int value = 0; value < 256; value++) {
+                            histogram[value] += chunkCounts[value];
+                            chunkCounts[value] = 0;
+                        }
+                        chunk = nextChunk.getAndIncrement();
+                    }
+                    return histogram;
+                }));
+            }
+
+            long[] counts = new long[256];
+            for (Future<long[]> histogram : histograms) {
+                long[] threadCounts = histogram.get();
+                for (int value = 0; value < 256; value++) {
+                    counts[value] += threadCounts[value];
+                }
+            }
+            return counts;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Behavior:
+    // - Turns byte counts into frequencies for a HuffmanCode. If the counts add up to more than
+    //   MAX_TOTAL_FREQUENCY they are scaled down, keeping every value that appears at least 1.
+    //   If no value appears (the file is empty), value 0 is given a frequency of 1 so that the
+    //   code still has a tree.
+    // Parameters:
+    // - counts: the number of times each value appears
+    // Returns:
+    // - int[]: the frequency of each value
+    public static int[] scaleFrequencies(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        int[] frequencies = new int[counts.length];
+        if (total == 0) {
+            frequencies[0] = 1;
+            return frequencies;
+        }
+        long divisor = (total + MAX_TOTAL_FREQUENCY / 2 - 1) / (MAX_TOTAL_FREQUENCY / 2);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                frequencies[i] = (int) Math.max(1, counts[i] / divisor);
+            }
+        }
+        return frequencies;
+    }
+
+    // Behavior:
+    // - Writes the code of every byte in part of the file to the writer.
+    // Parameters:
+    // - channel: the file to encode
+    // - position: the first byte to encode
+    // - length: the number of bytes to encode
+    // - code: the HuffmanCode of the bytes, which must have a code for every byte encoded
+    // - writer: where the codes are written
+    // Exceptions:
+    // - if the file cannot be read or the writer cannot write, an IOException is thrown
+    public static void encode(FileChannel channel, long position, long length, HuffmanCode code,
+                              BitWriter writer) throws IOException {
+        long[] codes = new long[256];
+        int[] lengths = new int[256];
+        for (int value = 0; value < 256; value++) {
+            lengths[value] = code.codeLength(value);
+            if (lengths[value] > 0) {
+                codes[value] = code.code(value);
+            }
+        }
+
+        byte[] bytes = new byte[COPY_SIZE];
+        long end = position + length;
+        while (position < end) {
+            long mappedLength = Math.min(CHUNK_SIZE, end - position);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, mappedLength);
+            while (mapped.hasRemaining()) {
+                int count = Math.min(bytes.length, mapped.remaining());
+                mapped.get(bytes, 0, count);
+                for (int i = 0; i < count; i++) {
+                    int value = bytes[i] & 0xff;
+                    writer.write(codes[value], lengths[value]);
+                }
+            }
+            position += mappedLength;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+// This class measures HuffmanCode over a generated corpus, without needing JMH (see
+// bench/HuffmanBenchmark.java for the JMH version). For each kind of data it reports:
+// - how long building a code from frequencies takes, and saving and loading it both ways
+// - encoding and decoding speed in MB/s of original data, decoding with the table decoder,
+//   through translate into an OutputStream, and bit by bit (the way translate originally
+//   walked the tree)
+// - the compression ratio (compressed size over original size)
+// - the bytes allocated per MB decoded, from the JVM's per-thread allocation counter
+// - the 99th percentile time to decode one block
+//
+// The corpus kinds are "text" (English-like words), "logs" (structured log lines), "random"
+// (uniform bytes) and "skewed" (byte k appears about twice as often as byte k + 1).
+
+import java.util.*;
+import java.io.*;
+import java.lang.management.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+public class HuffmanHarness {
+    // The kinds of corpus that can be generated
+    public static final String[] KINDS = {"text", "logs", "random", "skewed"};
+
+    // The default number of bytes in each corpus
+    public static final int DEFAULT_CORPUS_SIZE = 1 << 24;
+
+    // The number of bytes in each block that is encoded and decoded on its own
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    // The number of times each whole corpus is encoded and decoded
+    private static final int ROUNDS = 5;
+
+    // The number of times a code is built, saved or loaded for each measurement
+    private static final int REPEATS = 200;
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "in", "a", "is", "that", "for", "it", "as", "was", "with",
+        "be", "by", "on", "not", "he", "this", "are", "or", "his", "from", "at", "which",
+        "but", "have", "an", "had", "they", "you", "were", "their", "one", "all", "we", "can",
+        "her", "has", "there", "been", "if", "more", "when", "will", "would", "who", "so", "no",
+        "huffman", "tree", "code", "frequency", "character", "compression", "decode", "stream"
+    };
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+
+    private static final String[] PATHS = {
+        "/api/users", "/api/orders", "/api/orders/items", "/health", "/static/app.js",
+        "/login", "/logout", "/api/search"
+    };
+
+    // Runs the harness over every kind of corpus, or the kinds given on the command line:
+    //   HuffmanHarness [--size <bytes>] [kind ...]
+    public static void main(String[] args) throws IOException {
+        int size = DEFAULT_CORPUS_SIZE;
+        List<String> kinds = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--size")) {
+                size = Integer.parseInt(args[i + 1]);
+                i++;
+            } else {
+                kinds.add(args[i]);
+            }
+        }
+        if (kinds.isEmpty()) {
+            kinds.addAll(Arrays.asList(KINDS));
+        }
+
+        System.out.printf("%-7s %9s %9s %9s %7s %9s %9s %10s %9s %11s %9s%n", "corpus",
+                "build us", "text us", "compact", "ratio", "enc MB/s", "dec MB/s", "trans MB/s",
+                "bits MB/s", "alloc B/MB", "p99 ms");
+        for (String kind : kinds) {
+            run(kind, corpus(kind, size, 42));
+        }
+    }
+
+    // Measures one corpus and prints its row.
+    private static void run(String kind, byte[] data) throws IOException {
+        int[] frequencies = new int[256];
+        for (byte b : data) {
+            frequencies[b & 0xff]++;
+        }
+
+        // Building, then saving and loading in each format, in microseconds per operation
+        HuffmanCode code = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            code = new HuffmanCode(frequencies);
+        }
+        double buildMicros = (System.nanoTime() - start) / 1e3 / REPEATS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            ByteArrayOutputStream saved = new ByteArrayOutputStream();
+            PrintStream output = new PrintStream(saved);
+            code.save(output);
+            output.flush();
+            new HuffmanCode(new Scanner(saved.toString()));
+        }
+        double textMicros = (System.nanoTime() - start) / 1e3 / REPEATS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            ByteArrayOutputStream saved = new ByteArrayOutputStream();
+            code.saveCompact(saved);
+            new HuffmanCode(new ByteArrayInputStream(saved.toByteArray()));
+        }
+        double compactMicros = (System.nanoTime() - start) / 1e3 / REPEATS;
+
+        // Encodes each block on its own into one reused buffer per block
+        int blockCount = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[][] blocks = new byte[blockCount][];
+        BufferChannel channel = new BufferChannel(BLOCK_SIZE * 2 + 64);
+        long encodeNanos = Long.MAX_VALUE;
+        long compressedBytes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            compressedBytes = 0;
+            start = System.nanoTime();
+            for (int block = 0; block < blockCount; block++) {
+                channel.reset();
+                BitWriter writer = new BitWriter(channel, 1 << 16);
+                int from = block * BLOCK_SIZE;
+                int to = Math.min(data.length, from + BLOCK_SIZE);
+                for (int i = from; i < to; i++) {
+                    int value = data[i] & 0xff;
+                    writer.write(code.code(value), code.codeLength(value));
+                }
+                writer.flush();
+                compressedBytes += channel.size();
+                if (round == 0) {
+                    blocks[block] = channel.toByteArray();
+                }
+            }
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+        }
+
+        // Decodes with the table, timing every block, and then bit by bit
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        byte[] decoded = new byte[BLOCK_SIZE];
+        long[] blockNanos = new long[blockCount * ROUNDS];
+        long decodeNanos = Long.MAX_VALUE;
+        long allocatedBefore = allocatedBytes(threads);
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int block = 0; block < blockCount; block++) {
+                long blockStart = System.nanoTime();
+                int length = Math.min(BLOCK_SIZE, data.length - block * BLOCK_SIZE);
+                code.decode(new BitReader(ByteBuffer.wrap(blocks[block])), decoded, 0, length);
+                blockNanos[round * blockCount + block] = System.nanoTime() - blockStart;
+            }
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+        long allocated = allocatedBytes(threads) - allocatedBefore;
+        checkLastBlock(data, decoded);
+
+        // Translates each block into a reused stream, the way HuffmanCompressor decompresses
+        ByteArrayOutputStream translated = new ByteArrayOutputStream(BLOCK_SIZE);
+        long translateNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int block = 0; block < blockCount; block++) {
+                int length = Math.min(BLOCK_SIZE, data.length - block * BLOCK_SIZE);
+                translated.reset();
+                code.translate(new BitReader(ByteBuffer.wrap(blocks[block])), translated, length);
+            }
+            translateNanos = Math.min(translateNanos, System.nanoTime() - start);
+        }
+        checkLastBlock(data, translated.toByteArray());
+
+        BitByBitDecoder bitByBit = new BitByBitDecoder(code);
+        long bitNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int block = 0; block < blockCount; block++) {
+                int length = Math.min(BLOCK_SIZE, data.length - block * BLOCK_SIZE);
+                bitByBit.decode(new BitReader(ByteBuffer.wrap(blocks[block])), decoded, length);
+            }
+            bitNanos = Math.min(bitNanos, System.nanoTime() - start);
+        }
+        checkLastBlock(data, decoded);
+
+        Arrays.sort(blockNanos);
+        double megabytes = data.length / 1e6;
+        System.out.printf("%-7s %9.1f %9.1f %9.1f %7.3f %9.1f %9.1f %10.1f %9.1f %11d %9.3f%n",
+                kind, buildMicros, textMicros, compactMicros, (double) compressedBytes / data.length,
+                megabytes / (encodeNanos / 1e9), megabytes / (decodeNanos / 1e9),
+                megabytes / (translateNanos / 1e9), megabytes / (bitNanos / 1e9), (long) (allocated / (megabytes * ROUNDS)),
+                blockNanos[(int) (0.99 * (blockNanos.length - 1))] / 1e6);
+    }
+
+    // Throws an IllegalStateException if the decoded bytes do not match the last block of data.
+    private static void checkLastBlock(byte[] data, byte[] decoded) {
+        int lastStart = (data.length - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        if (data.length > 0 && !Arrays.equals(decoded, 0, data.length - lastStart,
+                data, lastStart, data.length)) {
+            throw new IllegalStateException("decoded data does not match the original");
+        }
+    }
+
+    // Returns the bytes allocated so far by the current thread, or 0 if the JVM cannot tell.
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Behavior:
+    // - Generates a corpus of the given kind. The same kind, size and seed always give the
+    //   same bytes.
+    // Parameters:
+    // - kind: one of KINDS
+    // - size: the number of bytes to generate
+    // - seed: the seed of the random numbers
+    // Returns:
+    // - byte[]: the corpus
+    // Exceptions:
+    // - if the kind is not one of KINDS, an IllegalArgumentException is thrown
+    public static byte[] corpus(String kind, int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        if (kind.equals("random")) {
+            random.nextBytes(data);
+        } else if (kind.equals("skewed")) {
+            for (int i = 0; i < size; i++) {
+                int value = Long.numberOfTrailingZeros(random.nextLong() | (1L << 62));
+                data[i] = (byte) value;
+            }
+        } else if (kind.equals("text") || kind.equals("logs")) {
+            StringBuilder text = new StringBuilder();
+            long time = 1700000000000L;
+            while (text.length() < size) {
+                if (kind.equals("text")) {
+                    int words = 5 + random.nextInt(15);
+                    for (int i = 0; i < words; i++) {
+                        String word = WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), 2))];
+                        if (i == 0) {
+                            word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                        }
+                        text.append(word).append(i == words - 1 ? ". " : " ");
+                    }
+                    if (random.nextInt(6) == 0) {
+                        text.append('\n');
+                    }
+                } else {
+                    time += random.nextInt(50);
+                    text.append(time).append(' ').append(LEVELS[random.nextInt(LEVELS.length)]);
+                    text.append(" 10.0.").append(random.nextInt(4)).append('.').append(random.nextInt(256));
+                    text.append(" GET ").append(PATHS[random.nextInt(PATHS.length)]);
+                    text.append(" status=").append(random.nextInt(10) == 0 ? 500 : 200);
+                    text.append(" ms=").append(random.nextInt(300)).append('\n');
+                }
+            }
+            System.arraycopy(text.toString().getBytes(StandardCharsets.US_ASCII), 0, data, 0, size);
+        } else {
+            throw new IllegalArgumentException(kind);
+        }
+        return data;
+    }
+
+    // This class decodes one bit at a time by following a tree, the way translate originally
+    // did, so the table decoder can be compared with it. The tree is read from the code's save
+    // file into arrays, with the root at node 0.
+    public static class BitByBitDecoder {
+        private int[] left;
+        private int[] right;
+        private int[] asciiValues;
+
+        // Constructs a decoder for the given code.
+        public BitByBitDecoder(HuffmanCode code) {
+            ByteArrayOutputStream saved = new ByteArrayOutputStream();
+            PrintStream output = new PrintStream(saved);
+            code.save(output);
+            output.flush();
+            Scanner input = new Scanner(saved.toString());
+            List<Integer> lefts = new ArrayList<>(List.of(-1));
+            List<Integer> rights = new ArrayList<>(List.of(-1));
+            List<Integer> values = new ArrayList<>(List.of(-1));
+            while (input.hasNextLine()) {
+                int asciiValue = Integer.parseInt(input.nextLine());
+                String path = input.nextLine();
+                int node = 0;
+                for (int i = 0; i < path.length(); i++) {
+                    List<Integer> children = path.charAt(i) == '1' ? rights : lefts;
+                    if (children.get(node) == -1) {
+                        children.set(node, values.size());
+                        lefts.add(-1);
+                        rights.add(-1);
+                        values.add(-1);
+                    }
+                    node = children.get(node);
+                }
+                values.set(node, asciiValue);
+            }
+            left = lefts.stream().mapToInt(Integer::intValue).toArray();
+            right = rights.stream().mapToInt(Integer::intValue).toArray();
+            asciiValues = values.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Decodes count characters from the input into the start of output, reading one bit
+        // at a time.
+        public void decode(BitReader input, byte[] output, int count) {
+            for (int i = 0; i < count; i++) {
+                int node = 0;
+                while (left[node] != -1) {
+                    if (input.read(1) == 1) {
+                        node = right[node];
+                    } else {
+                        node = left[node];
+                    }
+                }
+                output[i] = (byte) asciiValues[node];
+            }
+        }
+    }
+
+    // This class is a channel that collects written bytes in one array, which is reused
+    // after reset.
+    private static class BufferChannel implements WritableByteChannel {
+        private final byte[] bytes;
+        private int size;
+
+        // Constructs a channel that can hold the given number of bytes.
+        public BufferChannel(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        public int write(ByteBuffer source) {
+            int count = source.remaining();
+            source.get(bytes, size, count);
+            size += count;
+            return count;
+        }
+
+        // Forgets every byte written so far.
+        public void reset() {
+            size = 0;
+        }
+
+        // Returns the number of bytes written since the last reset.
+        public int size() {
+            return size;
+        }
+
+        // Returns a copy of the bytes written since the last reset.
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// This class is an adaptive Huffman coder that rebuilds a HuffmanCode from the characters seen
+// so far after every REBUILD_INTERVAL characters (see AdaptiveHuffman). Between rebuilds the
+// code does not change, so characters are written with a single lookup of their code and read
+// with HuffmanCode's decoding table, which is much faster than changing a tree every time.
+//
+// Every character starts with a count of 1, so every character always has a code. When the
+// counts add up to MAX_TOTAL they are halved, which keeps recent characters weighing the most.
+
+import java.io.*;
+
+public class PeriodicHuffman extends AdaptiveHuffman {
+    // The number of characters between rebuilds of the code
+    public static final int REBUILD_INTERVAL = 1 << 13;
+
+    // The total count at which every count is halved
+    public static final int MAX_TOTAL = 1 << 20;
+
+    private final int[] counts;
+    private int total;
+    private int sinceRebuild;
+    private HuffmanCode code;
+
+    // Constructs a coder where every character has been seen once.
+    public PeriodicHuffman() {
+        counts = new int[ALPHABET_SIZE];
+        for (int character = 0; character < ALPHABET_SIZE; character++) {
+            counts[character] = 1;
+        }
+        total = ALPHABET_SIZE;
+        code = new HuffmanCode(counts);
+    }
+
+    public void encode(int character, BitWriter output) throws IOException {
+        if (character < 0 || character >= ALPHABET_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        output.write(code.code(character), code.codeLength(character));
+        update(character);
+    }
+
+    public int decode(BitReader input) {
+        int character = code.decode(input);
+        update(character);
+        return character;
+    }
+
+    // Counts the character, halving the counts and rebuilding the code when it is time to.
+    private void update(int character) {
+        counts[character]++;
+        total++;
+        if (total >= MAX_TOTAL) {
+            total = 0;
+            for (int i = 0; i < ALPHABET_SIZE; i++) {
+                counts[i] = (counts[i] + 1) / 2;
+                total += counts[i];
+            }
+        }
+        sinceRebuild++;
+        if (sinceRebuild == REBUILD_INTERVAL) {
+            code = new HuffmanCode(counts);
+            sinceRebuild = 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// JMH benchmarks for HuffmanCode: building a code from frequencies, saving and loading it in
+// both formats, encoding, and decoding with the table decoder, through translate into an
+// OutputStream, and with the bit-by-bit tree walk that translate originally used. Every
+// benchmark runs over one block of each kind of corpus generated by HuffmanHarness (text,
+// logs, random and skewed), so a change to the codec can be measured against the same data.
+//
+// These benchmarks live in their own folder because they need the JMH jars, which the rest of
+// Huffman does not. To build and run them from the Huffman folder, with jmh-core,
+// jmh-generator-annprocess and their dependencies (jopt-simple, commons-math3) in $JMH and the
+// course's BitInputStream.java next to HuffmanCode.java:
+//   javac -cp "$JMH/*" -d bench/out *.java bench/*.java
+//   java -cp "bench/out:$JMH/*" org.openjdk.jmh.Main HuffmanBenchmark -prof gc
+// The gc profiler adds gc.alloc.rate.norm (bytes allocated per operation) to every result.
+// HuffmanHarness reports MB/s, compression ratio and p99 block latency without JMH.
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HuffmanBenchmark {
+    @Param({"text", "logs", "random", "skewed"})
+    public String kind;
+
+    private byte[] data;
+    private int[] frequencies;
+    private HuffmanCode code;
+    private byte[] savedText;
+    private byte[] savedCompact;
+    private byte[] encoded;
+    private byte[] decoded;
+    private ByteArrayOutputStream translated;
+    private HuffmanHarness.BitByBitDecoder bitByBit;
+
+    // Generates one block of the corpus, builds its code and encodes it.
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = HuffmanHarness.corpus(kind, HuffmanHarness.BLOCK_SIZE, 42);
+        frequencies = new int[256];
+        for (byte b : data) {
+            frequencies[b & 0xff]++;
+        }
+        code = new HuffmanCode(frequencies);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(text);
+        code.save(output);
+        output.flush();
+        savedText = text.toByteArray();
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        code.saveCompact(compact);
+        savedCompact = compact.toByteArray();
+
+        encoded = encode();
+        decoded = new byte[data.length];
+        translated = new ByteArrayOutputStream(data.length);
+        bitByBit = new HuffmanHarness.BitByBitDecoder(code);
+    }
+
+    @Benchmark
+    public HuffmanCode buildFromFrequencies() {
+        return new HuffmanCode(frequencies);
+    }
+
+    @Benchmark
+    public HuffmanCode saveAndLoadText() {
+        ByteArrayOutputStream text = new ByteArrayOutputStream(savedText.length);
+        PrintStream output = new PrintStream(text);
+        code.save(output);
+        output.flush();
+        return new HuffmanCode(new Scanner(new ByteArrayInputStream(text.toByteArray())));
+    }
+
+    @Benchmark
+    public HuffmanCode saveAndLoadCompact() throws IOException {
+        ByteArrayOutputStream compact = new ByteArrayOutputStream(savedCompact.length);
+        code.saveCompact(compact);
+        return new HuffmanCode(new ByteArrayInputStream(compact.toByteArray()));
+    }
+
+    // Each operation encodes one block, so ops/s times BLOCK_SIZE is the speed in bytes/s
+    @Benchmark
+    public byte[] encodeBlock() throws IOException {
+        return encode();
+    }
+
+    @Benchmark
+    public void decodeBlockTable(Blackhole blackhole) {
+        code.decode(new BitReader(ByteBuffer.wrap(encoded)), decoded, 0, decoded.length);
+        blackhole.consume(decoded);
+    }
+
+    @Benchmark
+    public void translateBlock(Blackhole blackhole) throws IOException {
+        translated.reset();
+        code.translate(new BitReader(ByteBuffer.wrap(encoded)), translated, decoded.length);
+        blackhole.consume(translated);
+    }
+
+    @Benchmark
+    public void decodeBlockBitByBit(Blackhole blackhole) {
+        bitByBit.decode(new BitReader(ByteBuffer.wrap(encoded)), decoded, decoded.length);
+        blackhole.consume(decoded);
+    }
+
+    // Returns the codes of every byte of the block, padded to a whole byte.
+    private byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        BitWriter writer = new BitWriter(Channels.newChannel(bytes), 1 << 16);
+        for (byte b : data) {
+            writer.write(code.code(b & 0xff), code.codeLength(b & 0xff));
+        }
+        writer.flush();
+        return bytes.toByteArray();
+    }
+}
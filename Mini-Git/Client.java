@@ -1,17 +1,25 @@
 import java.util.*;
+import java.io.*;
 
 // A program to work with Mini-Git. Manages the state of repositories and allows for all
-// operations defined in Mini-Git.
+// operations defined in Mini-Git. If a directory is given on the command line, every
+// repository is stored there and opened again the next time the program is run with it.
 public class Client {
     private static List<String> ops = new ArrayList<>();
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Collections.addAll(ops, "create", "head", "history", "commit", "drop",
                            "synchronize", "quit");
         Scanner console = new Scanner(System.in);
         Map<String, Repository> repos = new HashMap<>();
         String op = "";
         String name = "";
+        File directory = args.length > 0 ? new File(args[0]) : null;
+        if (directory != null) {
+            for (String stored : CommitLog.names(directory)) {
+                repos.put(stored, Repository.open(directory, stored));
+            }
+        }
 
         intro();
 
@@ -41,7 +49,8 @@ public class Client {
                 if (currRepo != null) {
                     System.out.println("  **ERROR**: Repository with that name already exists.");
                 } else {
-                    Repository newRepo = new Repository(name);
+                    Repository newRepo = directory == null ? new Repository(name)
+                            : Repository.open(directory, name);
                     repos.put(name, newRepo);
                     System.out.println("  New repository created: " + newRepo);
                 }
@@ -65,19 +74,29 @@ public class Client {
                     System.out.println("  No commit dropped!");
                 }
             } else if (op.equalsIgnoreCase("synchronize")) {
-                System.out.print("Which repository would you like to " +
+                System.out.print("Which repositories would you like to " +
                         "synchronize into the given one? ");
-                String repo = console.nextLine();
-                if (repo.equals(name)) {
+                Set<String> names = new LinkedHashSet<>(
+                        Arrays.asList(console.nextLine().trim().split("\\s+")));
+                if (names.contains(name)) {
                     System.out.println("Cannot synchronize the same repositories!");
-                } else if (!repos.containsKey(repo)) {
+                } else if (!repos.keySet().containsAll(names)) {
                     System.out.println("Repository does not exist!");
+                } else if (names.size() == 1) {
+                    currRepo.synchronize(repos.get(names.iterator().next()));
                 } else {
-                    currRepo.synchronize(repos.get(repo));
+                    List<Repository> others = new ArrayList<>();
+                    for (String other : names) {
+                        others.add(repos.get(other));
+                    }
+                    currRepo.synchronizeAll(others.toArray(new Repository[0]));
                 }
             }
             System.out.println();
         }
+        for (Repository repo : repos.values()) {
+            repo.close();
+        }
     }
 
     // Prints out an introduction to the Mini-Git test client.
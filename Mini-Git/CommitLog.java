@@ -0,0 +1,798 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// A class that stores a Repository on disk, so that it is kept after the program exits. It is
+// made of two files in a directory:
+// - a checkpoint ("name.ckpt"), holding every commit in the repository at some point in time,
+//   most recent first
+// - a log ("name.generation.log"), holding every change made since that checkpoint
+// The log is only appended to, through memory-mapped regions, so adding a change does not
+// make a system call. A background thread forces the changes to disk every FLUSH_INTERVAL
+// milliseconds, so one fsync covers every change made in that time (group commit), and sync
+// waits for the next one. Every record in the log has a length and a CRC32, so a record that
+// was only partly written before a crash is found when the log is opened, and the log is cut
+// off before it.
+//
+// A checkpoint is written in two steps. startCheckpoint forces the log to disk and starts a new
+// log with the next generation number, which the changes made after it go to, and
+// finishCheckpoint then writes the checkpoint naming the new log, replaces the old checkpoint
+// with it and deletes the older logs. The repository is only held up for the first step. When
+// the log is opened, the log named by the checkpoint and every later one are read in order, so
+// a crash at any point, or a checkpoint that could not be written, leaves every change.
+//
+// Every commit is stored as its id and its timeStamp, as 8-byte numbers, and its message, stored
+// as its length followed by its bytes in UTF-8.
+
+public class CommitLog implements Closeable {
+    // The most milliseconds a change waits before being forced to disk
+    public static final int FLUSH_INTERVAL = 10;
+
+    // The size of each region of the log that is mapped into memory
+    public static final int REGION_SIZE = 1 << 24;
+
+    // The most bytes of commits in each MERGE record, so a large merge is split into many records
+    public static final int MERGE_CHUNK_SIZE = 1 << 20;
+
+    // The types of records in the log
+    public static final byte COMMIT = 1;
+    public static final byte DROP = 2;
+    public static final byte MERGE = 3;
+    public static final byte CLEAR = 4;
+
+    private static final int MAGIC = 0x4d47434b;
+    private static final int VERSION = 3;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // A commit as it is stored on disk.
+    public static class Entry {
+        public final long id;
+        public final long timeStamp;
+        public final String message;
+
+        public Entry(long id, long timeStamp, String message) {
+            this.id = id;
+            this.timeStamp = timeStamp;
+            this.message = message;
+        }
+    }
+
+    // A change read back from the log. A COMMIT has one entry and the id of the commit it was
+    // made on (past, -1 if it was the first), a DROP has only an id, a MERGE has the history of
+    // each repository that was synchronized in, and a CLEAR has nothing.
+    public static class Record {
+        public final byte type;
+        public final long id;
+        public final long past;
+        public final Entry entry;
+        public final List<List<Entry>> sources;
+
+        private Record(byte type, long id, long past, Entry entry, List<List<Entry>> sources) {
+            this.type = type;
+            this.id = id;
+            this.past = past;
+            this.entry = entry;
+            this.sources = sources;
+        }
+    }
+
+    private final File directory;
+    private final String name;
+    private FileChannel channel;
+
+    // The generation of the log being appended to, and of the log the checkpoint names. They
+    // differ while a checkpoint is being written, or if one could not be written.
+    private long generation;
+    private long checkpointGeneration;
+
+    // The region being appended to, and regions that were filled but may not be forced yet
+    private MappedByteBuffer region;
+    private long regionStart;
+    private List<MappedByteBuffer> filledRegions;
+    private List<long[]> filledRanges;
+
+    // The end of the log, and how much of it is known to be on disk
+    private long position;
+    private long durable;
+
+    // The bytes in the logs of earlier generations, which their checkpoints keep on disk, so
+    // base + position only grows
+    private long base;
+
+    private long maxId;
+    private int checkpointSize;
+    private Entry checkpointHead;
+    private List<Record> tail;
+    private long tailEntries;
+
+    private final Thread flusher;
+    private boolean syncRequested;
+    private boolean closed;
+    private boolean stopped;
+    private IOException flushFailure;
+
+    // Behavior:
+    // - Opens the stored repository with the given name in the given directory, or creates an
+    //   empty one if there is none. Only the start of the checkpoint and the log written since
+    //   it are read, and the log is cut off after its last whole record.
+    // Parameter:
+    // - directory represents the directory the files are kept in, which is created if needed
+    // - name represents the name of the repository
+    // Exception:
+    // - Throws an IOException if the files cannot be read or written, or the checkpoint is not
+    //   valid
+    public CommitLog(File directory, String name) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        Files.createDirectories(directory.toPath());
+        if (checkpointFile().exists()) {
+            readCheckpointHeader();
+        } else {
+            maxId = -1;
+            writeCheckpoint(0, maxId, 0, Collections.emptyIterator());
+        }
+        generation = checkpointGeneration;
+
+        channel = openLog(generation);
+        tail = new ArrayList<>();
+        position = readTail();
+        while (logFile(generation + 1).exists()) {
+            // A checkpoint was started but not finished, so the changes after it are in the next
+            // log. Every record of this one was forced before the next log was started.
+            channel.truncate(position);
+            channel.close();
+            generation++;
+            channel = openLog(generation);
+            position = readTail();
+        }
+        channel.truncate(position);
+        deleteOtherLogs();
+        durable = position;
+        filledRegions = new ArrayList<>();
+        filledRanges = new ArrayList<>();
+
+        flusher = new Thread(this::flushLoop, "CommitLog flusher: " + name);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Returns the names of the repositories stored in the given directory
+    public static List<String> names(File directory) {
+        List<String> names = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.endsWith(".ckpt")) {
+                    names.add(fileName.substring(0, fileName.length() - ".ckpt".length()));
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    // Returns the largest commit id stored, or -1 if there is none
+    public synchronized long getMaxId() {
+        return maxId;
+    }
+
+    // Returns the number of commits in the checkpoint
+    public synchronized int getCheckpointSize() {
+        return checkpointSize;
+    }
+
+    // Returns the most recent commit in the checkpoint, or null if it is empty
+    public synchronized Entry getCheckpointHead() {
+        return checkpointHead;
+    }
+
+    // Returns the records read from the log when it was opened, in the order they were written
+    public synchronized List<Record> getTail() {
+        return tail;
+    }
+
+    // Returns the number of records written to the log since the last checkpoint, counting a
+    // MERGE as one for each commit in it
+    public synchronized long getTailEntries() {
+        return tailEntries;
+    }
+
+    // Behavior:
+    // - Returns the commits in the checkpoint, most recent first, read from the file as they
+    //   are asked for.
+    // Exception:
+    // - Throws an IOException if the checkpoint cannot be read
+    public synchronized Iterator<Entry> readCheckpoint() throws IOException {
+        DataInputStream input = openCheckpoint();
+        int count = checkpointSize;
+        return new Iterator<Entry>() {
+            private int read;
+
+            public boolean hasNext() {
+                return read < count;
+            }
+
+            public Entry next() {
+                if (read == count) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    Entry entry = readEntry(input);
+                    read++;
+                    if (read == count) {
+                        input.close();
+                    }
+                    return entry;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    // Behavior:
+    // - Adds a COMMIT record for the given commit to the log. The record is written out and its
+    //   CRC found before the log is locked, so commits from many threads only take turns to
+    //   copy their records in. They may be copied in a different order than they were made,
+    //   which the id of the commit each was made on puts right when the log is read back.
+    // Parameter:
+    // - id, timeStamp and message represent the commit
+    // - past represents the id of the commit it was made on, or -1 if there was none
+    // Exception:
+    // - Throws an IOException if the log cannot be written
+    public void appendCommit(long id, long timeStamp, String message, long past)
+            throws IOException {
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + 8 + 8 + 4 + messageBytes.length);
+        record.put(COMMIT);
+        record.putLong(past);
+        record.putLong(id);
+        record.putLong(timeStamp);
+        record.putInt(messageBytes.length).put(messageBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array());
+        synchronized (this) {
+            reserve(record.capacity()).put(record.array());
+            finish(record.capacity(), (int) crc.getValue());
+            noteId(id);
+            tailEntries++;
+        }
+    }
+
+    // Adds a DROP record for the commit with the given id to the log
+    public synchronized void appendDrop(long id) throws IOException {
+        ByteBuffer payload = reserve(1 + 8);
+        payload.put(DROP);
+        payload.putLong(id);
+        finish(payload);
+        tailEntries++;
+    }
+
+    // Adds a CLEAR record, which empties the repository, to the log
+    public synchronized void appendClear() throws IOException {
+        ByteBuffer payload = reserve(1);
+        payload.put(CLEAR);
+        finish(payload);
+        tailEntries++;
+    }
+
+    // Behavior:
+    // - Adds a merge to the log, holding the history of each repository that was synchronized
+    //   in, most recent first. The commits are written as they are read, in MERGE records of
+    //   about MERGE_CHUNK_SIZE bytes, and the last record of the merge is marked, so a merge
+    //   that was only partly written before a crash is cut off when the log is opened.
+    // Parameter:
+    // - sources represents the history of each repository, in the order they were given
+    // Exception:
+    // - Throws an IOException if the log cannot be written
+    public synchronized void appendMerge(List<Iterator<Entry>> sources) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        // Each record is held back until the next one is ready, so the last one can be marked
+        byte[] pending = new byte[0];
+        int pendingSource = 0;
+        int pendingCount = 0;
+        boolean anyPending = false;
+        for (int source = 0; source < sources.size(); source++) {
+            Iterator<Entry> entries = sources.get(source);
+            int count = 0;
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                writeEntry(output, entry);
+                noteId(entry.id);
+                count++;
+                if (bytes.size() >= MERGE_CHUNK_SIZE || !entries.hasNext()) {
+                    if (anyPending) {
+                        appendMergeChunk(pendingSource, pendingCount, pending, false);
+                    }
+                    output.flush();
+                    pending = bytes.toByteArray();
+                    pendingSource = source;
+                    pendingCount = count;
+                    anyPending = true;
+                    bytes.reset();
+                    count = 0;
+                }
+            }
+        }
+        appendMergeChunk(pendingSource, pendingCount, pending, true);
+    }
+
+    // Adds a MERGE record holding count commits of the given source, already written out as
+    // bytes, and marks whether it is the last record of its merge.
+    private void appendMergeChunk(int source, int count, byte[] entries, boolean last)
+            throws IOException {
+        ByteBuffer payload = reserve(1 + 4 + 1 + 4 + entries.length);
+        payload.put(MERGE);
+        payload.putInt(source);
+        payload.put((byte) (last ? 1 : 0));
+        payload.putInt(count);
+        payload.put(entries);
+        finish(payload);
+        tailEntries += count;
+    }
+
+    // Behavior:
+    // - Waits until every record added so far has been forced to disk, along with any added by
+    //   other threads before the next flush. A checkpoint or close in the meantime also counts,
+    //   since both leave every record on disk.
+    // Exception:
+    // - Throws an IOException if the log could not be forced to disk, or was closed without
+    //   forcing the records
+    public synchronized void sync() throws IOException {
+        long target = base + position;
+        syncRequested = true;
+        notifyAll();
+        while (base + durable < target && flushFailure == null && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (flushFailure != null) {
+            throw flushFailure;
+        }
+        if (base + durable < target) {
+            throw new IOException("log closed");
+        }
+    }
+
+    // Behavior:
+    // - Writes a new checkpoint holding the given commits and starts an empty log after it, then
+    //   deletes the old log. This is startCheckpoint and finishCheckpoint together.
+    // Parameter:
+    // - count represents the number of commits
+    // - entries represents the commits, most recent first
+    // Exception:
+    // - Throws an IOException if the files cannot be written
+    public void checkpoint(int count, Iterator<Entry> entries) throws IOException {
+        finishCheckpoint(startCheckpoint(), count, entries);
+    }
+
+    // Behavior:
+    // - Starts a checkpoint of the commits in the repository now: forces every record to disk
+    //   and starts an empty log, which the records added from now on go to. The records in the
+    //   old log are kept until the checkpoint is written by finishCheckpoint, which may be done
+    //   by another thread without holding up the repository. Only one checkpoint can be written
+    //   at a time.
+    // Return:
+    // - The generation of the new log, which is passed to finishCheckpoint
+    // Exception:
+    // - Throws an IOException if the log cannot be forced or the new log cannot be created
+    public synchronized long startCheckpoint() throws IOException {
+        if (closed) {
+            throw new IOException("log closed");
+        }
+        List<MappedByteBuffer> regions = new ArrayList<>(filledRegions);
+        List<long[]> ranges = new ArrayList<>(filledRanges);
+        if (region != null) {
+            regions.add(region);
+            ranges.add(new long[] {regionStart, position});
+        }
+        try {
+            force(regions, ranges, durable);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        FileChannel newChannel = FileChannel.open(logFile(generation + 1).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        generation++;
+        channel.close();
+        channel = newChannel;
+        region = null;
+        filledRegions.clear();
+        filledRanges.clear();
+
+        // Every record of the old log is on disk, so waiting syncs are done
+        base += position;
+        position = 0;
+        durable = 0;
+        tail = new ArrayList<>();
+        tailEntries = 0;
+        notifyAll();
+        return generation;
+    }
+
+    // Behavior:
+    // - Writes the checkpoint started by startCheckpoint, replaces the old checkpoint with it and
+    //   deletes the logs it replaces. The log can be added to while the checkpoint is written.
+    // Parameter:
+    // - logGeneration represents the generation returned by startCheckpoint
+    // - count represents the number of commits
+    // - entries represents the commits, most recent first
+    // Exception:
+    // - Throws an IOException if the files cannot be written, in which case the logs are kept
+    //   and the old checkpoint is still used
+    public void finishCheckpoint(long logGeneration, int count, Iterator<Entry> entries)
+            throws IOException {
+        Entry head = writeCheckpoint(logGeneration, getMaxId(), count, entries);
+        synchronized (this) {
+            checkpointSize = count;
+            checkpointHead = head;
+            checkpointGeneration = logGeneration;
+            deleteOtherLogs();
+        }
+    }
+
+    // Forces every record to disk, stops the background thread and closes the log. The
+    // background thread forces any records added during the close before it stops.
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    // Returns a buffer over the next length bytes of the log after a record header, mapping a
+    // new region at the end of the log if the current one is too full.
+    private ByteBuffer reserve(int length) throws IOException {
+        if (closed) {
+            throw new IOException("log closed");
+        }
+        long needed = RECORD_HEADER_SIZE + (long) length;
+        if (region == null || position + needed > regionStart + region.capacity()) {
+            if (region != null) {
+                filledRegions.add(region);
+                filledRanges.add(new long[] {regionStart, position});
+            }
+            regionStart = position;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                    Math.max(REGION_SIZE, needed));
+        }
+        ByteBuffer payload = region.duplicate();
+        int start = (int) (position - regionStart) + RECORD_HEADER_SIZE;
+        payload.position(start);
+        payload.limit(start + length);
+        return payload.slice();
+    }
+
+    // Writes the header of the record whose payload was just put in the given buffer (see below).
+    private void finish(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        payload.flip();
+        crc.update(payload.duplicate());
+        finish(payload.limit(), (int) crc.getValue());
+    }
+
+    // Writes the header of the record of the given length and CRC whose payload was just put
+    // in the log, the length last, and moves the end of the log past it. The first record after
+    // every record was forced wakes the background thread.
+    private void finish(int length, int checksum) {
+        if (position == durable) {
+            notifyAll();
+        }
+        int at = (int) (position - regionStart);
+        region.putInt(at + 4, checksum);
+        region.putInt(at, length);
+        position += RECORD_HEADER_SIZE + length;
+    }
+
+    // Forces new records to disk every FLUSH_INTERVAL milliseconds, or sooner when sync asks,
+    // until the log is closed and every record in it is forced. While every record is forced
+    // the thread sleeps until the next one is added (see finish), so an idle log costs nothing.
+    private void flushLoop() {
+        try {
+            while (flushOnce()) {
+                // Each flush waits for the next to be due
+            }
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    // Waits until a flush is due and forces the records added since the last one. Returns false
+    // once the log is closed with every record forced, or the records could not be forced.
+    private boolean flushOnce() {
+        List<MappedByteBuffer> regions;
+        List<long[]> ranges;
+        long target;
+        long forced;
+        long flushGeneration;
+        synchronized (this) {
+            try {
+                while (position == durable && !syncRequested && !closed) {
+                    wait();
+                }
+                if (!syncRequested && !closed) {
+                    wait(FLUSH_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            syncRequested = false;
+            if (position == durable) {
+                return !closed;
+            }
+            target = position;
+            forced = durable;
+            flushGeneration = generation;
+            regions = new ArrayList<>(filledRegions);
+            ranges = new ArrayList<>(filledRanges);
+            if (region != null) {
+                regions.add(region);
+                ranges.add(new long[] {regionStart, target});
+            }
+            filledRegions.clear();
+            filledRanges.clear();
+        }
+        try {
+            force(regions, ranges, forced);
+            synchronized (this) {
+                // A checkpoint in the meantime started a new log, which these regions are not in
+                if (generation == flushGeneration) {
+                    durable = Math.max(durable, target);
+                }
+                notifyAll();
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            synchronized (this) {
+                flushFailure = e.getCause();
+                notifyAll();
+            }
+            return false;
+        }
+    }
+
+    // Forces each of the given regions to disk over its range of the log, from the start of the
+    // range or from forced, whichever is later.
+    private static void force(List<MappedByteBuffer> regions, List<long[]> ranges, long forced) {
+        for (int i = 0; i < regions.size(); i++) {
+            long start = ranges.get(i)[0];
+            long from = Math.max(forced, start);
+            long end = ranges.get(i)[1];
+            if (end > from) {
+                regions.get(i).force((int) (from - start), (int) (end - from));
+            }
+        }
+    }
+
+    // Reads every whole record in the log into the tail, and returns where the last one ends.
+    // The MERGE records of one merge are put back together into one record, and a merge whose
+    // last record is missing is cut off along with everything after it.
+    private long readTail() throws IOException {
+        long size = channel.size();
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), 1 << 16));
+        long at = 0;
+        long end = 0;
+        List<List<Entry>> merging = null;
+        long mergingEntries = 0;
+        while (at + RECORD_HEADER_SIZE <= size) {
+            int length = input.readInt();
+            int expected = input.readInt();
+            if (length <= 0 || at + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            at += RECORD_HEADER_SIZE + length;
+            if (payload[0] == MERGE) {
+                if (merging == null) {
+                    merging = new ArrayList<>();
+                    mergingEntries = 0;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                record.readByte();
+                int source = record.readInt();
+                boolean last = record.readByte() != 0;
+                int count = record.readInt();
+                while (merging.size() <= source) {
+                    merging.add(new ArrayList<>());
+                }
+                for (int i = 0; i < count; i++) {
+                    merging.get(source).add(readEntry(record));
+                }
+                mergingEntries += count;
+                if (last) {
+                    for (List<Entry> history : merging) {
+                        for (Entry entry : history) {
+                            noteId(entry.id);
+                        }
+                    }
+                    tail.add(new Record(MERGE, -1, -1, null, merging));
+                    tailEntries += mergingEntries;
+                    merging = null;
+                    end = at;
+                }
+            } else if (merging == null) {
+                tail.add(parseRecord(payload));
+                end = at;
+            } else {
+                throw new IOException("merge is interrupted in " + logFile(generation));
+            }
+        }
+        return end;
+    }
+
+    // Returns the record stored in the given payload, noting its ids.
+    private Record parseRecord(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = input.readByte();
+        if (type == COMMIT) {
+            long past = input.readLong();
+            Entry entry = readEntry(input);
+            noteId(entry.id);
+            tailEntries++;
+            return new Record(type, -1, past, entry, null);
+        } else if (type == DROP) {
+            tailEntries++;
+            return new Record(type, input.readLong(), -1, null, null);
+        } else if (type == CLEAR) {
+            tailEntries++;
+            return new Record(type, -1, -1, null, null);
+        }
+        throw new IOException("unknown record type " + type);
+    }
+
+    // Writes a checkpoint holding the given commits to a temporary file, forces it to disk and
+    // moves it over the old checkpoint. Returns the most recent commit in it, or null if there
+    // is none.
+    private Entry writeCheckpoint(long logGeneration, long checkpointMaxId, int count,
+            Iterator<Entry> entries) throws IOException {
+        File temporary = new File(directory, name + ".ckpt.tmp");
+        Entry head = null;
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(logGeneration);
+            output.writeLong(checkpointMaxId);
+            output.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                Entry entry = entries.next();
+                if (i == 0) {
+                    head = entry;
+                }
+                writeEntry(output, entry);
+            }
+            output.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary.toPath(), checkpointFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return head;
+    }
+
+    // Reads the generation, largest id, size and most recent commit from the checkpoint.
+    private void readCheckpointHeader() throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(checkpointFile())))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("not a commit checkpoint: " + checkpointFile());
+            }
+            checkpointGeneration = input.readLong();
+            maxId = input.readLong();
+            checkpointSize = input.readInt();
+            checkpointHead = checkpointSize > 0 ? readEntry(input) : null;
+        }
+    }
+
+    // Returns the checkpoint, read up to its first commit.
+    private DataInputStream openCheckpoint() throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(checkpointFile()), 1 << 16));
+        input.readInt();
+        input.readInt();
+        input.readLong();
+        input.readLong();
+        input.readInt();
+        if (checkpointSize == 0) {
+            input.close();
+        }
+        return input;
+    }
+
+    // Deletes the logs of every generation before the checkpoint's or after the current log,
+    // left behind by a checkpoint or a crash.
+    private void deleteOtherLogs() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        String prefix = name + ".";
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.startsWith(prefix) && fileName.endsWith(".log")) {
+                String number = fileName.substring(prefix.length(), fileName.length() - 4);
+                if (!number.isEmpty() && number.length() < 19
+                        && number.chars().allMatch(Character::isDigit)) {
+                    long logGeneration = Long.parseLong(number);
+                    if (logGeneration < checkpointGeneration || logGeneration > generation) {
+                        Files.deleteIfExists(file.toPath());
+                    }
+                }
+            }
+        }
+    }
+
+    // Remembers the id if it is the largest so far.
+    private void noteId(long id) {
+        maxId = Math.max(maxId, id);
+    }
+
+    // Opens the log of the given generation, creating it if there is none.
+    private FileChannel openLog(long logGeneration) throws IOException {
+        return FileChannel.open(logFile(logGeneration).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private File checkpointFile() {
+        return new File(directory, name + ".ckpt");
+    }
+
+    private File logFile(long logGeneration) {
+        return new File(directory, name + "." + logGeneration + ".log");
+    }
+
+    private static void writeEntry(DataOutputStream output, Entry entry) throws IOException {
+        output.writeLong(entry.id);
+        output.writeLong(entry.timeStamp);
+        writeString(output, entry.message);
+    }
+
+    private static Entry readEntry(DataInputStream input) throws IOException {
+        long id = input.readLong();
+        long timeStamp = input.readLong();
+        return new Entry(id, timeStamp, readString(input));
+    }
+
+    private static void writeString(DataOutputStream output, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,12 +1,76 @@
 import java.util.*;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.stream.*;
+import java.io.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
 
 // A class that represents a Repository. A Repository is characterized by
-// a name and a head (the current commit).
+// a name and a head (the current commit). Every commit is also indexed by its id, along with
+// the commit made right after it, so that commits can be found and dropped without walking
+// the history.
+//
+// A Repository can also be stored on disk with a CommitLog (see open), in which case every
+// change is added to the log as it is made, and a checkpoint of the whole history is written
+// in the background once the log holds as many changes as the last checkpoint has commits.
+//
+// Any number of threads can use a Repository at once. New commits are put on the head with a
+// compare-and-set, under the read side of a read-write lock, so threads committing at the same
+// time do not wait for each other. Changes to older commits (drop, synchronize) take the write
+// side, which waits for commits in progress to finish, and so do checkpoints while they copy
+// the history and start a new log. A stored repository logs each commit along with the commit
+// it was put on, so commits can be added to the log in any order, and only take turns to copy
+// their records in; they are put back in the order they became the head when it is read.
 
 public class Repository {
+    // The fewest changes in the log before a checkpoint is written
+    public static final int CHECKPOINT_MIN_CHANGES = 1 << 16;
+
+    // The number of commits history copies at a time
+    public static final int HISTORY_BATCH_SIZE = 1 << 10;
+
+    // Sets head if it is still the expected commit
+    private static final AtomicReferenceFieldUpdater<Repository, Commit> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(Repository.class, Commit.class, "head");
+
+    // The number of repositories made so far, which orders them for locking
+    private static final AtomicLong repositoriesMade = new AtomicLong();
+
+    // The format of the time in a commit's String representation. A DateTimeFormatter cannot
+    // change, so every thread shares this one.
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd 'at' HH:mm:ss z").withZone(ZoneId.systemDefault());
+
+    // The last second formatted into each slot, where a second goes in the slot of its number
+    // modulo the number of slots. Commits made close together share a second, so most commits
+    // find their time already formatted.
+    private static final FormattedSecond[] formattedSeconds = new FormattedSecond[256];
+
     private String name;
-    private Commit head;
+    private volatile Commit head;
+    private final LongAdder size;
+    private final long sequence;
+    private final ReentrantReadWriteLock lock;
+
+    // Where this repository is stored on disk, or null if it is only kept in memory
+    private CommitLog log;
+
+    // Whether the history has been read back from the log (see open)
+    private volatile boolean loaded;
+
+    // Whether changes read back from the log are being made again, which are not logged
+    private boolean replaying;
+
+    // Held while a checkpoint is being written, so only one is written at a time
+    private final Semaphore checkpointing;
+
+    // The commit with each id
+    private Map<Long, Commit> commits;
+
+    // The commit whose past is the commit with each id (the head has no entry)
+    private Map<Long, Commit> newer;
 
     // Behavior: 
     // - Constructs an empty Repository with a name.
@@ -19,35 +83,110 @@ public class Repository {
             throw new IllegalArgumentException();
         }
         this.name = name;
+        this.size = new LongAdder();
+        this.sequence = repositoriesMade.getAndIncrement();
+        this.lock = new ReentrantReadWriteLock();
+        this.commits = new ConcurrentHashMap<>();
+        this.newer = new ConcurrentHashMap<>();
+        this.loaded = true;
+        this.checkpointing = new Semaphore(1);
+    }
+
+    // Behavior:
+    // - Opens the Repository with the given name stored in the given directory, or creates an
+    //   empty one there if there is none. Only the start of the last checkpoint and the changes
+    //   logged after it are read now. The rest of the history is read back the first time it
+    //   is needed, so the head and size of a repository that was closed properly are known
+    //   without reading its history at all.
+    // Parameter:
+    // - directory represents the directory the repository is stored in
+    // - name represents the name of the Repository
+    // Return:
+    // - The opened Repository
+    // Exception:
+    // - Throws an IllegalArgumentException if the name is null or empty
+    // - Throws an IOException if the repository's files cannot be read or written
+    public static Repository open(File directory, String name) throws IOException {
+        Repository repo = new Repository(name);
+        repo.log = new CommitLog(directory, name);
+        repo.loaded = false;
+        Commit.currentCommitID.accumulateAndGet(repo.log.getMaxId() + 1, Math::max);
+        return repo;
+    }
+
+    // Behavior:
+    // - Waits until every change made to this repository so far is on disk. Changes are
+    //   forced to disk in groups every few milliseconds, so commit does not wait for the disk.
+    // Exception:
+    // - Throws an IOException if the changes could not be written
+    public void sync() throws IOException {
+        if (log != null) {
+            log.sync();
+        }
+    }
+
+    // Behavior:
+    // - Writes a checkpoint of this repository, if its history has been read, and closes its
+    //   log, after any checkpoint being written in the background is done. The repository
+    //   cannot be changed after it is closed.
+    // Exception:
+    // - Throws an IOException if the files cannot be written
+    public void close() throws IOException {
+        if (log != null) {
+            // Never released, so no checkpoint is started in the background after this
+            checkpointing.acquireUninterruptibly();
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    checkpoint();
+                }
+                log.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
     }
 
     // Returns the id of the current head of this repository and null if the head does not exist
     public String getRepoHead() {
-        if(head == null) {
+        if (!loaded && log.getTail().isEmpty()) {
+            CommitLog.Entry stored = log.getCheckpointHead();
+            return stored == null ? null : Long.toString(stored.id);
+        }
+        load();
+        Commit current = head;
+        if(current == null) {
             return null;
         }
-        return head.id;
+        return current.getId();
     }
 
     // Returns the number of commits in the Repository
     public int getRepoSize() {
-        int size = 0;
-        Commit current = head;
-        while (current != null) {
-            size++;
-            current = current.past;
+        if (!loaded && log.getTail().isEmpty()) {
+            return log.getCheckpointSize();
         }
-        return size;
+        load();
+        return (int) size.sum();
     }
 
     // Returns a String representation of the Repository name and the current head in the
     // Repository. If there are no commits in the repository, the Repository name and 
     // specification that there are no commits is returned.
     public String toString() {
-        if (head == null) {
+        Commit current;
+        if (!loaded && log.getTail().isEmpty()) {
+            CommitLog.Entry stored = log.getCheckpointHead();
+            current = stored == null ? null
+                    : new Commit(stored.id, stored.timeStamp, stored.message, null);
+        } else {
+            load();
+            current = head;
+        }
+        if (current == null) {
             return name + " - No commits";
         }
-        return name + " - Current head: " + head.toString();
+        return name + " - Current head: " + current.toString();
     }
 
     // Behavior:
@@ -59,20 +198,17 @@ public class Repository {
     // - Returns true if the id inputted by the user is in the repository and false if that id is  
     //   not in the Repository.
     public boolean contains(String targetId) {
-        Commit current = head;
-        while (current != null) {
-            if (current.id.equals(targetId)) {
-                return true;
-            }
-            current = current.past;
-        }
-        return false;
+        load();
+        long id = parseId(targetId);
+        return id >= 0 && commits.containsKey(id);
     }
 
     // Behavior and Return: 
     // - Returns a String representation of the user-inputted number most recent commits in the
     //  repository, showing the most recent commit first. If the user asks for more commits than
     //  exists in the Repository, then al commits are returned.
+    //  The commits are copied while drops and synchronizes are held off, so the history shows
+    //  the repository at one moment, and are then made into a String without holding them off.
     // Parameter:
     // - the integer inputted by the user represents the number of most recent commits the user 
     //   would like to see
@@ -82,14 +218,124 @@ public class Repository {
         if (n <= 0) {
             throw new IllegalArgumentException();
         }
-        String listCommits = "";
-        Commit current = head;
-        while (n != 0 && current != null) {
-            listCommits += current.toString() + "\n";
-            current = current.past;
-            n--;
+        load();
+        StringBuilder listCommits = new StringBuilder();
+        try {
+            appendHistory(copyHistory(null, n), listCommits);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return listCommits.toString();
+    }
+
+    // Behavior:
+    // - Writes the user-inputted number most recent commits in the repository to the output, in
+    //   the same form as getHistory, without building the whole history as one String. Like
+    //   getHistory, the commits are copied first, so a slow output does not hold up drops and
+    //   synchronizes, or the commits queued behind them.
+    // Parameter:
+    // - the integer inputted by the user represents the number of most recent commits the user 
+    //   would like to see
+    // - output represents where the history is written
+    // Exception:
+    // - Throws an IllegalArgumentException if the integer inputted by the user is not positive.
+    // - Throws an IOException if the output cannot be written
+    public void writeHistory(int n, Appendable output) throws IOException {
+        if (n <= 0) {
+            throw new IllegalArgumentException();
+        }
+        load();
+        appendHistory(copyHistory(null, n), output);
+    }
+
+    // Appends the given commits to the output, one line each.
+    private static void appendHistory(List<Commit> history, Appendable output) throws IOException {
+        for (Commit current : history) {
+            output.append(current.getId()).append(" at ").append(formatTime(current.timeStamp))
+                    .append(": ").append(current.message).append('\n');
+        }
+    }
+
+    // Returns at most n commits of the history, most recent first, starting at the head if
+    // after is null and at the commit before after otherwise. The links are followed under the
+    // read lock, so none of them is being changed by a drop or synchronize.
+    private List<Commit> copyHistory(Commit after, int n) {
+        lock.readLock().lock();
+        try {
+            Commit current = after == null ? head : after.past;
+            List<Commit> history = new ArrayList<>((int) Math.min(n, size.sum() + 1));
+            while (history.size() < n && current != null) {
+                history.add(current);
+                current = current.past;
+            }
+            return history;
+        } finally {
+            lock.readLock().unlock();
         }
-        return listCommits;
+    }
+
+    // Behavior:
+    // - Returns the commits in the repository, most recent first, found HISTORY_BATCH_SIZE at a
+    //   time as the stream is read, so history().limit(n) only looks at about n commits. Each
+    //   batch is copied like getHistory copies the history, starting at the head for the first
+    //   batch and after the last commit of the one before for the others, so the stream may or
+    //   may not show changes made between batches.
+    // Return:
+    // - The stream of commits
+    public Stream<Commit> history() {
+        load();
+        Iterator<Commit> commitsInOrder = new Iterator<Commit>() {
+            private List<Commit> batch = Collections.emptyList();
+            private int index;
+            private Commit last;
+            private boolean done;
+
+            public boolean hasNext() {
+                if (index == batch.size() && !done) {
+                    batch = copyHistory(last, HISTORY_BATCH_SIZE);
+                    index = 0;
+                    done = batch.size() < HISTORY_BATCH_SIZE;
+                }
+                return index < batch.size();
+            }
+
+            public Commit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = batch.get(index);
+                index++;
+                return last;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(commitsInOrder,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // A second and its time in the format of TIME_FORMAT. Its fields are final, so a thread that
+    // sees one in formattedSeconds always sees both fields.
+    private static class FormattedSecond {
+        private final long second;
+        private final String text;
+
+        private FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    // Returns the given time, in milliseconds, in the format of TIME_FORMAT, formatting it only
+    // if its second is not already in formattedSeconds.
+    private static String formatTime(long timeStamp) {
+        long second = Math.floorDiv(timeStamp, 1000);
+        int slot = (int) (second & (formattedSeconds.length - 1));
+        FormattedSecond cached = formattedSeconds[slot];
+        if (cached == null || cached.second != second) {
+            cached = new FormattedSecond(second, TIME_FORMAT.format(Instant.ofEpochSecond(second)));
+            formattedSeconds[slot] = cached;
+        }
+        return cached.text;
     }
 
     // Behavior:
@@ -100,68 +346,670 @@ public class Repository {
     // Return:
     // - The id of the new commit is returned
     public String commit(String message) {
-        Commit current = new Commit(message, head);
-        head = current;
-        return current.id;
+        return newCommit(message).getId();
+    }
+
+    // Behavior:
+    // - Creates a new commit like commit does, without making a String of its id.
+    // Parameter:
+    // - The message represents the message the user would like to have associated with this commit
+    // Return:
+    // - The id of the new commit is returned
+    public long append(String message) {
+        return newCommit(message).id;
     }
 
     // The commit assoiciated with the id inputted by the user is removed. The history of commits 
     // in the repository is maintained. Returns true if the commit was removed correctly and false 
     // if the commit associated with the id inputted by the user was not in the repository.
     public boolean drop(String targetId) {
-        if (head != null) {
-            if (head.id == targetId) {
-                head = head.past;
-                return true;
-            } else {
-                Commit current = head;
-                while (current.past != null && current.past.id != targetId) {
-                    current = current.past;
-                }
-                if (current.past != null) {
-                    current.past = current.past.past;
-                    return true;
-                }
+        long id = parseId(targetId);
+        if (id < 0) {
+            return false;
+        }
+        load();
+        lock.writeLock().lock();
+        try {
+            if (!remove(id)) {
+                return false;
+            }
+            logChange(() -> log.appendDrop(id));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Makes a new commit the head, logging it if this repository is stored on disk. The read
+    // lock keeps its past from changing until it is logged.
+    private Commit newCommit(String message) {
+        load();
+        long id = Commit.currentCommitID.getAndIncrement();
+        Commit current;
+        lock.readLock().lock();
+        try {
+            current = push(id, message);
+            if (log != null) {
+                Commit past = current.past;
+                log.appendCommit(current.id, current.timeStamp, current.message,
+                        past == null ? -1 : past.id);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        checkpointIfDue();
+        return current;
+    }
+
+    // Removes the commit with the given id, if there is one, and returns whether there was.
+    // The write lock must be held.
+    private boolean remove(long id) {
+        Commit target = commits.remove(id);
+        if (target == null) {
+            return false;
+        }
+        Commit after = newer.remove(id);
+        if (after == null) {
+            head = target.past;
+            if (target.past != null) {
+                newer.remove(target.past.id);
+            }
+        } else {
+            link(after, target.past);
+        }
+        size.decrement();
+        return true;
+    }
+
+    // Returns the number a String id stands for, or -1 if it is not the id of any commit.
+    private static long parseId(String text) {
+        if (text == null || text.isEmpty() || text.length() > 19) {
+            return -1;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return -1;
             }
         }
-        return false;
+        long id = Long.parseLong(text);
+        return Long.toString(id).equals(text) ? id : -1;
     }
 
     // Behavior:
     // - Combines this and other repository together by adding all the commits in the other
-    //   repository to this repository. The history of this repository should be ordered by the 
-    //   commits' timestamps from most recent to least recent after the commits in the other 
+    //   repository to this repository. The history of this repository should be ordered by the
+    //   commits' timestamps from most recent to least recent after the commits in the other
     //   repository are added to this repository. The other repository becomes an empty respoitory.
+    //   The two histories are merged in one pass with a pointer to the last merged commit, and
+    //   a commit is only relinked where the merged history switches between the repositories.
+    //   Commits with the same timestamp keep this repository's commits first.
     // Parameter:
     // - other represents the other repository the user would like to synchronize with this
     //   repository
+    // Exception:
+    // - Throws an IllegalArgumentException if other is this repository
     public void synchronize(Repository other) {
-       if (this.head == null) {
-            this.head = other.head;
-            other.head = null;
-        } else if (other.head != null) {
-            // front case
-            if (this.head.timeStamp < other.head.timeStamp) {
-                Commit temp = other.head.past;
-                other.head.past = this.head;
-                this.head = other.head;
-                other.head = temp;
-            }
-            Commit thisCommit = this.head;
-            while (other.head != null && thisCommit.past != null) {
-                if (thisCommit.past.timeStamp < other.head.timeStamp) {
-                    Commit temp = other.head.past;
-                    other.head.past = thisCommit.past;
-                    thisCommit.past = other.head;
-                    other.head = temp;
-                }
-                thisCommit = thisCommit.past;
-            }
-
-            if (thisCommit.past == null) {
-                thisCommit.past = other.head;
+        if (other == this) {
+            throw new IllegalArgumentException();
+        }
+        Repository[] others = {other};
+        List<Lock> locks = lockAll(participants(others), true);
+        try {
+            logMerge(others);
+            mergeWith(other);
+            clearLogs(others);
+            checkpointIfDue();
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    // Merges the other repository's history into this one's (see synchronize).
+    private void mergeWith(Repository other) {
+        absorb(other);
+        Commit mine = this.head;
+        Commit theirs = other.head;
+        other.head = null;
+        if (mine == null || theirs == null) {
+            if (mine == null) {
+                this.head = theirs;
+            }
+            return;
+        }
+
+        Commit tail;
+        if (mine.timeStamp < theirs.timeStamp) {
+            tail = theirs;
+            theirs = theirs.past;
+        } else {
+            tail = mine;
+            mine = mine.past;
+        }
+        this.head = tail;
+        while (mine != null && theirs != null) {
+            Commit next;
+            if (mine.timeStamp < theirs.timeStamp) {
+                next = theirs;
+                theirs = theirs.past;
+            } else {
+                next = mine;
+                mine = mine.past;
+            }
+            if (tail.past != next) {
+                link(tail, next);
+            }
+            tail = next;
+        }
+        Commit rest = mine != null ? mine : theirs;
+        if (tail.past != rest) {
+            link(tail, rest);
+        }
+    }
+
+    // Behavior:
+    // - Synchronizes every other repository into this one at once (see synchronize). The
+    //   histories are merged with a heap holding the most recent remaining commit of each
+    //   repository, so merging k repositories takes O(log k) per commit instead of a pass over
+    //   this repository for each of them. Commits with the same timestamp keep this repository's
+    //   commits first, then the others' in the order they are given. Every other repository
+    //   becomes empty.
+    // Parameter:
+    // - others represents the repositories to synchronize into this repository
+    // Exception:
+    // - Throws an IllegalArgumentException if others contains this repository or contains a
+    //   repository more than once
+    public void synchronizeAll(Repository... others) {
+        Repository[] repos = participants(others);
+        List<Lock> locks = lockAll(repos, true);
+        try {
+            Commit[] heads = heads(repos);
+            logMerge(others);
+            for (Repository other : others) {
+                absorb(other);
                 other.head = null;
             }
+            head = merge(heads, null);
+            clearLogs(others);
+            checkpointIfDue();
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    // Behavior:
+    // - Plans synchronizing every other repository into this one (see synchronizeAll) without
+    //   changing any repository. The merged order is worked out now and kept in the plan, and
+    //   nothing is relinked until the plan is committed, so the histories are never seen half
+    //   merged. The plan holds a reference to every commit, so it needs memory for them all.
+    // Parameter:
+    // - others represents the repositories to synchronize into this repository
+    // Return:
+    // - The plan, which synchronizes the repositories when its commit method is called
+    // Exception:
+    // - Throws an IllegalArgumentException if others contains this repository or contains a
+    //   repository more than once
+    public MergePlan planSynchronize(Repository... others) {
+        return new MergePlan(others);
+    }
+
+    // A synchronization of other repositories into this one that has been worked out but not
+    // yet done (see planSynchronize).
+    public class MergePlan {
+        private final Repository[] others;
+        private final Commit[] plannedHeads;
+        private final int[] plannedSizes;
+        private final Commit[] order;
+        private boolean committed;
+
+        private MergePlan(Repository[] others) {
+            Repository[] repos = participants(others);
+            List<Lock> locks = lockAll(repos, false);
+            try {
+                Commit[] heads = heads(repos);
+                this.others = others.clone();
+                this.plannedHeads = heads.clone();
+                this.plannedSizes = new int[repos.length];
+                int total = 0;
+                for (int i = 0; i < repos.length; i++) {
+                    plannedSizes[i] = (int) repos[i].size.sum();
+                    total += plannedSizes[i];
+                }
+                this.order = new Commit[total];
+                merge(heads, order);
+            } finally {
+                unlockAll(locks);
+            }
+        }
+
+        // Returns the number of commits the repository will hold once the plan is committed
+        public int getMergedSize() {
+            return order.length;
+        }
+
+        // Behavior:
+        // - Relinks the commits in the planned order and makes the merged history this
+        //   repository's history, emptying the other repositories. Commits are relinked from the
+        //   least recent up and the head is replaced last, so a walk from the old head only ever
+        //   reaches commits that are already in their merged order.
+        // Exception:
+        // - Throws an IllegalStateException if the plan was already committed, or if any of the
+        //   repositories has changed since the plan was made
+        public void commit() {
+            Repository[] repos = participants(others);
+            List<Lock> locks = lockAll(repos, true);
+            try {
+                if (committed) {
+                    throw new IllegalStateException();
+                }
+                for (int i = 0; i < repos.length; i++) {
+                    if (repos[i].head != plannedHeads[i] || repos[i].size.sum() != plannedSizes[i]) {
+                        throw new IllegalStateException();
+                    }
+                }
+                committed = true;
+                logMerge(others);
+                for (Repository other : others) {
+                    absorb(other);
+                }
+                for (int i = order.length - 2; i >= 0; i--) {
+                    if (order[i].past != order[i + 1]) {
+                        link(order[i], order[i + 1]);
+                    }
+                }
+                for (Repository other : others) {
+                    other.head = null;
+                }
+                head = order.length > 0 ? order[0] : null;
+                clearLogs(others);
+                checkpointIfDue();
+            } finally {
+                unlockAll(locks);
+            }
+        }
+    }
+
+    // Returns this repository followed by the others, checking that they are all different and
+    // reading back the history of any that are stored on disk.
+    private Repository[] participants(Repository[] others) {
+        Set<Repository> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.add(this);
+        for (Repository other : others) {
+            if (!seen.add(other)) {
+                throw new IllegalArgumentException();
+            }
+        }
+        Repository[] repos = new Repository[others.length + 1];
+        repos[0] = this;
+        System.arraycopy(others, 0, repos, 1, others.length);
+        for (Repository repo : repos) {
+            repo.load();
+        }
+        return repos;
+    }
+
+    // Returns the head of each of the given repositories.
+    private static Commit[] heads(Repository[] repos) {
+        Commit[] heads = new Commit[repos.length];
+        for (int i = 0; i < repos.length; i++) {
+            heads[i] = repos[i].head;
+        }
+        return heads;
+    }
+
+    // Locks the given repositories in the order they were made, so that threads locking the
+    // same repositories can never wait for each other in a cycle, and returns the locks taken.
+    private static List<Lock> lockAll(Repository[] repos, boolean write) {
+        Repository[] sorted = repos.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(repo -> repo.sequence));
+        List<Lock> locks = new ArrayList<>();
+        for (Repository repo : sorted) {
+            Lock repoLock = write ? repo.lock.writeLock() : repo.lock.readLock();
+            repoLock.lock();
+            locks.add(repoLock);
+        }
+        return locks;
+    }
+
+    // Unlocks locks taken by lockAll.
+    private static void unlockAll(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    // Behavior:
+    // - Merges the histories that start at the given heads, most recent first, with a heap of
+    //   the histories ordered by their most recent remaining commit. Ties go to the history with
+    //   the lower index. While one history stays ahead of the heap's top, its commits are taken
+    //   without going through the heap.
+    // Parameter:
+    // - heads represents the first commit of each history, and is used up by the merge
+    // - order represents where the merged order is stored, or null to relink the commits into
+    //   the merged order right away
+    // Return:
+    // - The first commit of the merged history, or null if every history is empty
+    private Commit merge(Commit[] heads, Commit[] order) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>(heads.length,
+                (a, b) -> aheadOf(heads[a], a, heads[b], b) ? -1 : 1);
+        for (int i = 0; i < heads.length; i++) {
+            if (heads[i] != null) {
+                queue.add(i);
+            }
+        }
+        Commit first = null;
+        Commit tail = null;
+        int count = 0;
+        while (!queue.isEmpty()) {
+            int source = queue.poll();
+            do {
+                Commit next = heads[source];
+                heads[source] = next.past;
+                if (order != null) {
+                    order[count] = next;
+                    count++;
+                } else if (tail == null) {
+                    first = next;
+                } else if (tail.past != next) {
+                    link(tail, next);
+                }
+                tail = next;
+            } while (heads[source] != null && (queue.isEmpty()
+                    || aheadOf(heads[source], source, heads[queue.peek()], queue.peek())));
+            if (heads[source] != null) {
+                queue.add(source);
+            }
+        }
+        return first;
+    }
+
+    // Returns whether commitA, from the history at index a, comes before commitB, from the
+    // history at index b, in a merge (see merge).
+    private static boolean aheadOf(Commit commitA, int a, Commit commitB, int b) {
+        return commitA.timeStamp > commitB.timeStamp
+                || (commitA.timeStamp == commitB.timeStamp && a < b);
+    }
+
+    // Moves the other repository's indexes and size into this repository's. Every commit that
+    // gets a new past afterwards is relinked through link, which corrects the entries that
+    // changed.
+    private void absorb(Repository other) {
+        this.commits.putAll(other.commits);
+        this.newer.putAll(other.newer);
+        this.size.add(other.size.sum());
+        other.commits.clear();
+        other.newer.clear();
+        other.size.reset();
+    }
+
+    // Makes the given commit the head, with the old head as its past. The head is set with a
+    // compare-and-set, trying again if another thread set it first.
+    private void push(Commit commit) {
+        Commit past;
+        do {
+            past = head;
+            commit.past = past;
+        } while (!HEAD.compareAndSet(this, past, commit));
+        pushed(commit, past);
+    }
+
+    // Makes a new commit with the given id and message the head, like push. The commit is made
+    // again on each try, stamped with the current time or the time of the commit it is put on,
+    // whichever is later, so the history stays ordered by timeStamp however the threads that
+    // commit at once are scheduled, and even if the clock goes back.
+    private Commit push(long id, String message) {
+        Commit commit;
+        Commit past;
+        do {
+            past = head;
+            long now = System.currentTimeMillis();
+            commit = new Commit(id, past == null ? now : Math.max(now, past.timeStamp), message,
+                    past);
+        } while (!HEAD.compareAndSet(this, past, commit));
+        pushed(commit, past);
+        return commit;
+    }
+
+    // Indexes a commit that was just made the head on top of past.
+    private void pushed(Commit commit, Commit past) {
+        commits.put(commit.id, commit);
+        if (past != null) {
+            newer.put(past.id, commit);
+        }
+        size.increment();
+    }
+
+    // A change to add to the log.
+    private interface LogChange {
+        void write() throws IOException;
+    }
+
+    // Adds a change that has just been made to the log if this repository is stored on disk.
+    private void logChange(LogChange change) {
+        if (log == null || replaying) {
+            return;
+        }
+        try {
+            change.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkpointIfDue();
+    }
+
+    // Starts writing a checkpoint on a background thread once the log holds at least as many
+    // changes as the last checkpoint has commits, so the time spent on checkpoints stays
+    // proportional to the number of changes, unless one is being written already.
+    private void checkpointIfDue() {
+        if (log == null || replaying || !checkpointDue() || !checkpointing.tryAcquire()) {
+            return;
+        }
+        Thread writer = new Thread(this::checkpointInBackground, "Repository checkpoint: " + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Copies the history and starts a new log while holding the write lock, then writes the
+    // copy to the checkpoint while commits go on. If the checkpoint cannot be written, the logs
+    // still hold every change and the next checkpoint tries again.
+    private void checkpointInBackground() {
+        try {
+            Commit[] history;
+            long logGeneration;
+            lock.writeLock().lock();
+            try {
+                if (!checkpointDue()) {
+                    return;
+                }
+                history = new Commit[(int) size.sum()];
+                Commit current = head;
+                for (int i = 0; i < history.length; i++) {
+                    history[i] = current;
+                    current = current.past;
+                }
+                logGeneration = log.startCheckpoint();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.finishCheckpoint(logGeneration, history.length,
+                    Arrays.stream(history).map(Repository::entry).iterator());
+        } catch (IOException | UncheckedIOException e) {
+            // Left to the next checkpoint, or to close
+        } finally {
+            checkpointing.release();
+        }
+    }
+
+    // Returns whether the log holds at least as many changes as the last checkpoint has commits.
+    // The size of the repository would only be caught up with by changes other than commits.
+    private boolean checkpointDue() {
+        return log.getTailEntries() >= Math.max(CHECKPOINT_MIN_CHANGES, log.getCheckpointSize());
+    }
+
+    // Logs the histories of the other repositories before they are merged into this one. The
+    // commits are written to the log as their histories are walked, without copying them first.
+    // The records are forced to disk before the others are cleared (see clearLogs), so a crash
+    // in between can leave a commit in both repositories but never in neither. No checkpoint is
+    // written until the merge is done.
+    private void logMerge(Repository[] others) {
+        if (log == null || replaying) {
+            return;
+        }
+        List<Iterator<CommitLog.Entry>> histories = new ArrayList<>();
+        for (Repository other : others) {
+            histories.add(entries(other.head));
+        }
+        try {
+            log.appendMerge(histories);
+            log.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Logs that each of the other repositories is now empty.
+    private static void clearLogs(Repository[] others) {
+        for (Repository other : others) {
+            other.logChange(() -> other.log.appendClear());
+        }
+    }
+
+    // Writes a checkpoint of the whole history, which starts a new, empty log. The write lock
+    // must be held.
+    private void checkpoint() throws IOException {
+        log.checkpoint((int) size.sum(), entries(head));
+    }
+
+    // Returns how each commit in the history starting at the given commit is stored in the log,
+    // most recent first, found as they are asked for.
+    private static Iterator<CommitLog.Entry> entries(Commit first) {
+        return new Iterator<CommitLog.Entry>() {
+            private Commit current = first;
+
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            public CommitLog.Entry next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                CommitLog.Entry next = entry(current);
+                current = current.past;
+                return next;
+            }
+        };
+    }
+
+    // Reads the history back from the checkpoint and makes the changes logged after it again,
+    // if that has not been done yet.
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            // Changes being replayed call back in here, and find the history being read
+            if (loaded || replaying) {
+                return;
+            }
+            replaying = true;
+            try {
+                Commit last = null;
+                Iterator<CommitLog.Entry> stored = log.readCheckpoint();
+                while (stored.hasNext()) {
+                    Commit current = restore(stored.next());
+                    if (last == null) {
+                        head = current;
+                    } else {
+                        link(last, current);
+                    }
+                    commits.put(current.id, current);
+                    size.increment();
+                    last = current;
+                }
+                replayTail();
+                loaded = true;
+            } finally {
+                replaying = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Makes the changes logged after the checkpoint again. Commits made at the same time may
+    // have been logged in a different order than they were made, so a commit that was not
+    // made on the head waits until the commit it was made on is the head. A commit whose past
+    // was never logged, because of a crash, is put on the head at the end.
+    private void replayTail() {
+        Map<Long, CommitLog.Record> waiting = new LinkedHashMap<>();
+        for (CommitLog.Record record : log.getTail()) {
+            if (record.type != CommitLog.COMMIT) {
+                // Every commit before a change to older commits was logged before it
+                replay(record);
+            } else if (record.past != (head == null ? -1 : head.id)) {
+                waiting.put(record.past, record);
+            } else {
+                replay(record);
+                CommitLog.Record next;
+                while ((next = waiting.remove(head.id)) != null) {
+                    replay(next);
+                }
+            }
+        }
+        while (!waiting.isEmpty()) {
+            CommitLog.Record next = waiting.remove(waiting.keySet().iterator().next());
+            do {
+                replay(next);
+                next = waiting.remove(head.id);
+            } while (next != null);
+        }
+    }
+
+    // Makes a change read back from the log again.
+    private void replay(CommitLog.Record record) {
+        if (record.type == CommitLog.COMMIT) {
+            push(restore(record.entry));
+        } else if (record.type == CommitLog.DROP) {
+            remove(record.id);
+        } else if (record.type == CommitLog.CLEAR) {
+            head = null;
+            commits.clear();
+            newer.clear();
+            size.reset();
+        } else if (record.type == CommitLog.MERGE) {
+            Repository[] others = new Repository[record.sources.size()];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = new Repository(name);
+                List<CommitLog.Entry> history = record.sources.get(i);
+                for (int j = history.size() - 1; j >= 0; j--) {
+                    others[i].push(restore(history.get(j)));
+                }
+            }
+            synchronizeAll(others);
+        }
+    }
+
+    // Returns a commit with the id, timeStamp and message of one read back from the log.
+    private Commit restore(CommitLog.Entry stored) {
+        return new Commit(stored.id, stored.timeStamp, stored.message, null);
+    }
+
+    // Returns how the given commit is stored in the log.
+    private static CommitLog.Entry entry(Commit commit) {
+        return new CommitLog.Entry(commit.id, commit.timeStamp, commit.message);
+    }
+
+    // Makes past the commit before the given commit, and records the given commit as the one
+    // after past.
+    private void link(Commit commit, Commit past) {
+        commit.past = past;
+        if (past != null) {
+            newer.put(past.id, commit);
         }
     }
     /**
@@ -178,7 +1026,7 @@ public class Repository {
      */
     public class Commit {
 
-        private static int currentCommitID;
+        private static final AtomicLong currentCommitID = new AtomicLong();
 
         /**
          * The time, in milliseconds, at which this commit was created.
@@ -188,7 +1036,7 @@ public class Repository {
         /**
          * A unique identifier for this commit.
          */
-        public final String id;
+        public final long id;
 
         /**
          * A message describing the changes made in this commit.
@@ -200,6 +1048,11 @@ public class Repository {
          */
         public Commit past;
 
+        /**
+         * The identifier as a String, made the first time it is asked for.
+         */
+        private String idText;
+
         /**
          * Constructs a commit object. The unique identifier and timestamp
          * are automatically generated.
@@ -208,12 +1061,28 @@ public class Repository {
          *             commit.
          */
         public Commit(String message, Commit past) {
-            this.id = "" + currentCommitID++;
+            this.id = currentCommitID.getAndIncrement();
             this.message = message;
             this.timeStamp = System.currentTimeMillis();
             this.past = past;
         }
 
+        /**
+         * Constructs a commit object that was made before, such as one read
+         * back from disk, keeping its identifier and timestamp.
+         * @param id The unique identifier of the commit.
+         * @param timeStamp The time, in milliseconds, the commit was made.
+         * @param message A message describing the changes made in this commit.
+         * @param past A reference to the commit made immediately before this
+         *             commit.
+         */
+        private Commit(long id, long timeStamp, String message, Commit past) {
+            this.id = id;
+            this.message = message;
+            this.timeStamp = timeStamp;
+            this.past = past;
+        }
+
         /**
          * Constructs a commit object with no previous commit. The unique
          * identifier and timestamp are automatically generated.
@@ -223,6 +1092,21 @@ public class Repository {
             this(message, null);
         }
 
+        /**
+         * Returns the unique identifier of this commit as a String. The
+         * String is made the first time it is asked for; threads that ask
+         * at the same time may each make one, which are all equal.
+         * @return The identifier as a String.
+         */
+        public String getId() {
+            String text = idText;
+            if (text == null) {
+                text = Long.toString(id);
+                idText = text;
+            }
+            return text;
+        }
+
         /**
          * Returns a string representation of this commit. The string
          * representation consists of this commit's unique identifier,
@@ -232,10 +1116,7 @@ public class Repository {
          */
         @Override
         public String toString() {
-            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd 'at' HH:mm:ss z");
-            Date date = new Date(timeStamp);
-
-            return id + " at " + formatter.format(date) + ": " + message;
+            return getId() + " at " + formatTime(timeStamp) + ": " + message;
         }
 
         /**
@@ -243,7 +1124,7 @@ public class Repository {
         * Primarily for testing purposes.
         */
         public static void resetIds() {
-            Commit.currentCommitID = 0;
+            Commit.currentCommitID.set(0);
         }
     }
 }